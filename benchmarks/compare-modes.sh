@@ -0,0 +1,23 @@
+#!/bin/bash
+# Сравнивает режимы сервера на одной машине: для каждого режима число соединений растет,
+# пока сервер принимает их все; для каждого шага печатается пропускная способность, p99 и память
+# Использование: benchmarks/compare-modes.sh
+# Переменные: MODES ("threads virtual nio"), COUNTS ("1000 5000 10000 15000"), ACTIVE (32), DURATION (10)
+# Число соединений ограничено и лимитом открытых файлов (ulimit -n) процессов теста и сервера
+cd "$(dirname "$0")/.."
+
+MODES=${MODES:-"threads virtual nio"}
+COUNTS=${COUNTS:-"1000 5000 10000 15000"}
+
+for mode in $MODES; do
+    for count in $COUNTS; do
+        summary=$(benchmarks/load-test.sh "$mode" --connections "$count" --active "${ACTIVE:-32}" \
+            --warmup 3 --duration "${DURATION:-10}" 2>&1 | grep '^Итог:')
+        echo "$mode: ${summary:-Итог: тест не завершился}"
+        opened=$(echo "$summary" | sed -n 's/^Итог: соединений \([0-9]*\) из.*/\1/p')
+        if [ "${opened:-0}" -lt "$count" ]; then
+            echo "$mode: принято меньше $count соединений, дальше не увеличиваем"
+            break
+        fi
+    done
+done
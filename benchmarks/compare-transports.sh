@@ -0,0 +1,16 @@
+#!/bin/bash
+# Сравнивает задержку запроса через локальный TCP и через unix-сокет
+# Одно соединение отправляет запросы строго по очереди, поэтому задержка определяется транспортом, а не очередями
+# Использование: benchmarks/compare-transports.sh [РЕЖИМ] (nio)
+# Переменные: COMMAND (info), CONNECTIONS (1), DURATION (20)
+cd "$(dirname "$0")/.."
+
+MODE=${1:-nio}
+SOCKET=$(mktemp -u --suffix=.sock)
+
+for listen in "localhost:5555" "unix:$SOCKET"; do
+    echo "== $listen"
+    LISTEN_ADDRESSES="$listen" benchmarks/load-test.sh "$MODE" --connections "${CONNECTIONS:-1}" --active 1 \
+        --command "${COMMAND:-info}" --warmup 5 --duration "${DURATION:-20}" | grep -E '^(Запросов|Задержка)'
+done
+rm -f "$SOCKET"
@@ -0,0 +1,25 @@
+#!/bin/bash
+# Запускает сервер в указанном режиме и нагружает его LoadTest
+# Использование: benchmarks/load-test.sh РЕЖИМ [параметры LoadTest]
+# Например: benchmarks/load-test.sh nio --connections 10000 --active 64
+# Перед запуском соберите проект: mvn -B package -DskipTests
+set -e
+cd "$(dirname "$0")/.."
+
+MODE=${1:?"укажите режим сервера: threads, virtual или nio"}
+shift
+LISTEN=${LISTEN_ADDRESSES:-localhost:5555}
+COLLECTION=$(mktemp --suffix=.xml)
+cp tickets.xml "$COLLECTION"
+
+# Ограничения сервера подняты, чтобы измерялся сам режим обработки, а не отказы в подключении
+env SERVER_MODE="$MODE" LISTEN_ADDRESSES="$LISTEN" COLLECTION_FILE="$COLLECTION" \
+    MAX_CONNECTIONS=${MAX_CONNECTIONS:-100000} MAX_CONNECTIONS_PER_IP=${MAX_CONNECTIONS_PER_IP:-100000} \
+    ACCEPT_BACKLOG=${ACCEPT_BACKLOG:-4096} IDLE_TIMEOUT_MS=${IDLE_TIMEOUT_MS:-3600000} RATE_LIMITING=false \
+    java ${SERVER_JAVA_OPTS:-} -jar server/target/server-1.0-SNAPSHOT.jar < /dev/null > "${SERVER_LOG:-/dev/null}" 2>&1 &
+SERVER_PID=$!
+trap 'kill $SERVER_PID 2>/dev/null; wait $SERVER_PID 2>/dev/null; rm -f "$COLLECTION"' EXIT
+sleep ${SERVER_STARTUP_SECONDS:-3}
+
+echo "Режим сервера: $MODE"
+java -cp benchmarks/target/benchmarks.jar benchmarks.LoadTest --address "${LISTEN%%,*}" --server-pid $SERVER_PID "$@"
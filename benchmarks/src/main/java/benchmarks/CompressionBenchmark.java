@@ -0,0 +1,54 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import protocol.BinaryCodec;
+import protocol.Compression;
+import protocol.Frames;
+import things.Response;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Цена сжатия ответов против сэкономленных байтов
+ * Полезная нагрузка - закодированный ответ на show для коллекции из заданного числа билетов;
+ * при подготовке печатаются размеры до и после сжатия, а замеряются сжатие и распаковка
+ * Запуск: java -jar benchmarks/target/benchmarks.jar CompressionBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+    /** Число билетов в ответе: 1 билет меньше порога сжатия COMPRESSION_THRESHOLD по умолчанию */
+    @Param({"1", "10", "100", "1000", "10000"})
+    public int tickets;
+
+    private byte[] payload;
+    private byte[] compressed;
+
+    @Setup
+    public void setUp() throws IOException {
+        Tickets generator = new Tickets(9);
+        StringBuilder text = new StringBuilder();
+        for (int id = 1; id <= tickets; id++) {
+            text.append(generator.next(id));
+        }
+        payload = BinaryCodec.INSTANCE.encodeResponse(new Response(Response.ResponseType.INFO, text.toString()));
+        compressed = Compression.deflate(payload);
+        System.out.printf("%nБилетов %d: %d байт, сжато %d байт (%.1f%%)%n", tickets, payload.length,
+                compressed.length, 100.0 * compressed.length / payload.length);
+    }
+
+    @Benchmark
+    public byte[] deflate() {
+        return Compression.deflate(payload);
+    }
+
+    @Benchmark
+    public byte[] inflate() throws IOException {
+        return Compression.inflate(compressed, Frames.MAX_FRAME_SIZE);
+    }
+}
@@ -0,0 +1,95 @@
+package benchmarks;
+
+import mainClasses.Ticket;
+import mainClasses.TicketType;
+import managers.CollectionManager;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость чтения и изменения коллекции с упорядоченными индексами от 10^4 до 10^7 билетов
+ * Команды вывода обходят готовый индекс; для сравнения замеряется и прежний способ - сортировка копии
+ * коллекции при каждом вызове. Изменения обновляют индексы по id, имени, цене и вместимости места проведения:
+ * update заменяет случайный билет, addRemove добавляет билет в конец и удаляет его
+ * Для 10^7 билетов нужно около 4 ГБ кучи (задано в @Fork), подготовка коллекции занимает до минуты
+ * Запуск: java -jar benchmarks/target/benchmarks.jar IndexBenchmark [-p size=10000,100000]
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class IndexBenchmark {
+    private static final Comparator<Ticket> BY_PRICE_DESCENDING = Comparator
+            .comparingInt(Ticket::getPrice).reversed()
+            .thenComparing(Ticket::getId);
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private CollectionManager collectionManager;
+    /** Билеты с новыми данными для update и add; берутся по кругу */
+    private final Ticket[] replacements = new Ticket[1024];
+    private final Random random = new Random(24);
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Tickets generator = new Tickets(24);
+        Vector<Ticket> tickets = new Vector<>(size);
+        for (int id = 1; id <= size; id++) {
+            tickets.add(generator.next(id));
+        }
+        collectionManager = new CollectionManager();
+        collectionManager.setTicketsCollection(tickets);
+        for (int i = 0; i < replacements.length; i++) {
+            replacements[i] = generator.next(0);
+        }
+    }
+
+    private Ticket nextReplacement() {
+        next = (next + 1) & (replacements.length - 1);
+        return replacements[next];
+    }
+
+    @Benchmark
+    public void printFieldDescendingPrice(Blackhole blackhole) {
+        collectionManager.printFieldDescendingPrice(blackhole::consume);
+    }
+
+    /**
+     * Прежняя реализация print_field_descending_price: копия коллекции сортируется при каждом вызове
+     */
+    @Benchmark
+    public void sortOnEveryCall(Blackhole blackhole) {
+        Ticket[] tickets = collectionManager.getTicketsCollection().toArray(new Ticket[0]);
+        Arrays.sort(tickets, BY_PRICE_DESCENDING);
+        for (Ticket ticket : tickets) {
+            blackhole.consume(ticket.getPrice() + "\n");
+        }
+    }
+
+    @Benchmark
+    public long countGreaterThan() {
+        return collectionManager.countGreaterThan(TicketType.USUAL);
+    }
+
+    @Benchmark
+    public void update() {
+        collectionManager.updateElement(1 + random.nextInt(size), nextReplacement());
+    }
+
+    @Benchmark
+    public void addRemove() {
+        Ticket ticket = nextReplacement();
+        collectionManager.addElement(ticket);
+        collectionManager.removeElement(ticket.getId());
+    }
+}
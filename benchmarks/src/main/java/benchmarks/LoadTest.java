@@ -0,0 +1,285 @@
+package benchmarks;
+
+import protocol.BinaryCodec;
+import protocol.Frame;
+import protocol.Frames;
+import protocol.Handshake;
+import protocol.WireCodec;
+import things.Request;
+import things.Response;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Нагрузочный тест запущенного сервера
+ * Открывает заданное количество соединений и держит их открытыми, затем часть соединений в течение заданного
+ * времени отправляет запросы без пауз; печатает число открытых соединений, пропускную способность,
+ * процентили задержки и, если указан идентификатор процесса сервера, его резидентную память и число потоков
+ *
+ * Соединения не создают потоков на стороне теста: открытые соединения простаивают, а активные обслуживаются
+ * виртуальными потоками, поэтому тест держит десятки тысяч соединений и на одном ядре
+ *
+ * Параметры: --address хост:порт или unix:путь (localhost:5555), --connections (10000), --active (64),
+ * --command (info), --warmup секунд (5), --duration секунд (20), --connectors (16), --server-pid
+ * Серверу нужны MAX_CONNECTIONS и MAX_CONNECTIONS_PER_IP не меньше числа соединений, RATE_LIMITING=false
+ * и IDLE_TIMEOUT_MS больше продолжительности теста; сценарий load-test.sh запускает сервер с такими настройками
+ */
+public class LoadTest {
+    private final WireCodec codec = BinaryCodec.INSTANCE;
+
+    /**
+     * Соединение с сервером, прошедшее рукопожатие
+     */
+    private final class Connection implements Closeable {
+        private final SocketChannel channel;
+        private final DataOutputStream out;
+        private final DataInputStream in;
+        private long nextId;
+
+        Connection(SocketAddress address) throws IOException {
+            channel = address instanceof UnixDomainSocketAddress
+                    ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+            try {
+                channel.connect(address);
+                if (channel.supportedOptions().contains(StandardSocketOptions.TCP_NODELAY)) {
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                }
+                out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+                in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+                Frames.writeFrame(out, 0, new Handshake(codec.getId()).toBytes());
+                Handshake reply = Handshake.fromBytes(Frames.readFrame(in).getPayload());
+                if (reply.isRejected()) {
+                    throw new IOException("Сервер отказал в подключении: " + reply.getRejectReason());
+                }
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Отправляет запрос и дожидается ответа на него
+         */
+        Response call(Request request) throws IOException {
+            long id = ++nextId;
+            Frames.writeFrame(out, id, codec.encodeRequest(request));
+            while (true) {
+                Frame frame = Frames.readFrame(in);
+                if (frame.getId() == id && !frame.isRaw()) {
+                    Response response = codec.decodeResponse(frame.getContent());
+                    if (response.getType() != Response.ResponseType.CHUNK) {
+                        return response;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Растущий массив задержек одного активного соединения
+     */
+    private static final class Latencies {
+        private long[] values = new long[1 << 12];
+        private int size;
+
+        void add(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+    }
+
+    private final SocketAddress address;
+    private final int connections;
+    private final int active;
+    private final String command;
+    private final int warmupSeconds;
+    private final int durationSeconds;
+    private final int connectors;
+    private final long serverPid;
+    /** Резидентная память и число потоков сервера при последнем измерении */
+    private String serverRss = "?";
+    private String serverThreads = "?";
+    private double requestsPerSecond;
+    private long p99Micros;
+
+    LoadTest(Map<String, String> options) {
+        address = parseAddress(options.getOrDefault("address", "localhost:5555"));
+        connections = Integer.parseInt(options.getOrDefault("connections", "10000"));
+        active = Integer.parseInt(options.getOrDefault("active", "64"));
+        command = options.getOrDefault("command", "info");
+        warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        durationSeconds = Integer.parseInt(options.getOrDefault("duration", "20"));
+        connectors = Integer.parseInt(options.getOrDefault("connectors", "16"));
+        serverPid = Long.parseLong(options.getOrDefault("server-pid", "0"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadTest(parseOptions(args)).run();
+    }
+
+    void run() throws Exception {
+        System.out.println("Адрес " + address + ", соединений " + connections + ", активных " + active
+                + ", команда " + command);
+        printServer("Сервер до подключений");
+
+        List<Connection> opened = Collections.synchronizedList(new ArrayList<>(connections));
+        AtomicInteger failed = new AtomicInteger();
+        Map<String, Integer> errors = new ConcurrentHashMap<>();
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            AtomicInteger remaining = new AtomicInteger(connections);
+            for (int i = 0; i < connectors; i++) {
+                executor.submit(() -> {
+                    while (remaining.getAndDecrement() > 0) {
+                        try {
+                            opened.add(new Connection(address));
+                        } catch (IOException e) {
+                            failed.incrementAndGet();
+                            errors.merge(String.valueOf(e.getMessage()), 1, Integer::sum);
+                        }
+                    }
+                });
+            }
+        }
+        long connectMillis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("Открыто соединений: " + opened.size() + " из " + connections + " за " + connectMillis
+                + " мс, ошибок " + failed.get());
+        errors.forEach((message, count) -> System.out.println("  " + count + " x " + message));
+        Thread.sleep(2000);
+        printServer("Сервер с открытыми соединениями");
+
+        int workers = Math.min(active, opened.size());
+        if (workers > 0) {
+            measure(opened.subList(0, workers));
+            printServer("Сервер после нагрузки");
+        }
+        for (Connection connection : opened) {
+            connection.close();
+        }
+        // Итоговая строка одного формата для всех режимов, по ней compare-modes.sh строит таблицу
+        System.out.printf("Итог: соединений %d из %d, запросов в секунду %.0f, p99 %d мкс, память %s, потоков %s%n",
+                opened.size(), connections, requestsPerSecond, p99Micros, serverRss, serverThreads);
+    }
+
+    /**
+     * Отправляет запросы из активных соединений без пауз и печатает пропускную способность и процентили задержки
+     */
+    private void measure(List<Connection> workers) throws Exception {
+        long measureFrom = System.nanoTime() + warmupSeconds * 1_000_000_000L;
+        long deadline = measureFrom + durationSeconds * 1_000_000_000L;
+        List<Latencies> results = new ArrayList<>();
+        AtomicInteger failures = new AtomicInteger();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Connection connection : workers) {
+                Latencies latencies = new Latencies();
+                results.add(latencies);
+                executor.submit(() -> {
+                    Request request = new Request(command, new String[0]);
+                    try {
+                        while (true) {
+                            long sent = System.nanoTime();
+                            if (sent >= deadline) break;
+                            Response response = connection.call(request);
+                            long received = System.nanoTime();
+                            if (!response.isSuccess()) {
+                                failures.incrementAndGet();
+                            }
+                            if (sent >= measureFrom) {
+                                latencies.add(received - sent);
+                            }
+                        }
+                    } catch (IOException e) {
+                        failures.incrementAndGet();
+                    }
+                });
+            }
+        }
+        int total = 0;
+        for (Latencies latencies : results) {
+            total += latencies.size;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (Latencies latencies : results) {
+            System.arraycopy(latencies.values, 0, all, offset, latencies.size);
+            offset += latencies.size;
+        }
+        Arrays.sort(all);
+        requestsPerSecond = total / (double) durationSeconds;
+        System.out.printf("Запросов: %d за %d с, %.0f в секунду, неуспешных %d%n",
+                total, durationSeconds, total / (double) durationSeconds, failures.get());
+        if (total > 0) {
+            p99Micros = percentile(all, 0.99);
+            System.out.printf("Задержка, мкс: p50 %d, p90 %d, p99 %d, p99.9 %d, max %d%n",
+                    percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99), percentile(all, 0.999),
+                    all[total - 1] / 1000);
+        }
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1000;
+    }
+
+    /**
+     * Печатает резидентную память и число потоков процесса сервера из /proc
+     */
+    private void printServer(String title) throws IOException {
+        if (serverPid <= 0) return;
+        Path status = Path.of("/proc", String.valueOf(serverPid), "status");
+        if (!Files.exists(status)) {
+            System.out.println(title + ": процесс " + serverPid + " не найден");
+            return;
+        }
+        String rss = "?";
+        String threads = "?";
+        for (String line : Files.readAllLines(status)) {
+            if (line.startsWith("VmRSS:")) {
+                rss = line.substring("VmRSS:".length()).trim();
+            } else if (line.startsWith("Threads:")) {
+                threads = line.substring("Threads:".length()).trim();
+            }
+        }
+        serverRss = rss;
+        serverThreads = threads;
+        System.out.println(title + ": память " + rss + ", потоков " + threads);
+    }
+
+    static SocketAddress parseAddress(String value) {
+        if (value.startsWith("unix:")) {
+            return UnixDomainSocketAddress.of(value.substring("unix:".length()));
+        }
+        int colon = value.lastIndexOf(':');
+        return new InetSocketAddress(value.substring(0, colon), Integer.parseInt(value.substring(colon + 1)));
+    }
+
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Ожидался параметр вида --имя значение: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+}
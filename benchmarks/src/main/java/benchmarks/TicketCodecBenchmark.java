@@ -0,0 +1,127 @@
+package benchmarks;
+
+import mainClasses.Ticket;
+import org.openjdk.jmh.annotations.*;
+import protocol.TicketCodec;
+import protocol.WireCodec;
+import things.Request;
+
+import java.io.*;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Двоичные кодеки против сериализации Java
+ * Запрос add с билетом кодируется и декодируется каждым кодеком протокола, а коллекция из 1000 билетов -
+ * форматом снимка (TicketCodec) и ObjectOutputStream; размеры в байтах печатаются при подготовке
+ * Запуск: java -jar benchmarks/target/benchmarks.jar TicketCodecBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TicketCodecBenchmark {
+
+    /**
+     * Запрос add в формате одного из кодеков протокола
+     */
+    @State(Scope.Benchmark)
+    public static class RequestState {
+        /** Идентификатор кодека: 0 - сериализация, 1 - двоичный формат v1, 2 - двоичный формат v2 */
+        @Param({"0", "1", "2"})
+        public byte codecId;
+
+        WireCodec codec;
+        Request request;
+        byte[] encoded;
+
+        @Setup
+        public void setUp() throws IOException {
+            codec = WireCodec.forId(codecId);
+            request = new Request("add", new Tickets(18).next(1));
+            encoded = codec.encodeRequest(request);
+            System.out.printf("%nКодек %d: запрос add %d байт%n", codecId, encoded.length);
+        }
+    }
+
+    /**
+     * Коллекция билетов в формате снимка и в сериализованном виде
+     */
+    @State(Scope.Benchmark)
+    public static class CollectionState {
+        Vector<Ticket> tickets = new Vector<>();
+        byte[] snapshot;
+        byte[] serialized;
+
+        @Setup
+        public void setUp() throws IOException, ClassNotFoundException {
+            Tickets generator = new Tickets(18);
+            for (int id = 1; id <= 1000; id++) {
+                tickets.add(generator.next(id));
+            }
+            snapshot = writeSnapshot(tickets);
+            serialized = serialize(tickets);
+            System.out.printf("%n1000 билетов: снимок %d байт, сериализация %d байт%n",
+                    snapshot.length, serialized.length);
+        }
+    }
+
+    @Benchmark
+    public byte[] encodeRequest(RequestState state) throws IOException {
+        return state.codec.encodeRequest(state.request);
+    }
+
+    @Benchmark
+    public Request decodeRequest(RequestState state) throws IOException {
+        return state.codec.decodeRequest(state.encoded);
+    }
+
+    @Benchmark
+    public byte[] writeSnapshot(CollectionState state) throws IOException {
+        return writeSnapshot(state.tickets);
+    }
+
+    @Benchmark
+    public Vector<Ticket> readSnapshot(CollectionState state) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(state.snapshot));
+        int size = TicketCodec.readVarInt(in);
+        Vector<Ticket> tickets = new Vector<>(size);
+        for (int i = 0; i < size; i++) {
+            tickets.add(TicketCodec.readTicket(in));
+        }
+        return tickets;
+    }
+
+    @Benchmark
+    public byte[] serializeCollection(CollectionState state) throws IOException {
+        return serialize(state.tickets);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Vector<Ticket> deserializeCollection(CollectionState state) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(state.serialized))) {
+            return (Vector<Ticket>) in.readObject();
+        }
+    }
+
+    private static byte[] writeSnapshot(Vector<Ticket> tickets) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        TicketCodec.writeVarInt(out, tickets.size());
+        for (Ticket ticket : tickets) {
+            TicketCodec.writeTicket(out, ticket);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] serialize(Vector<Ticket> tickets) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(tickets);
+        }
+        return bytes.toByteArray();
+    }
+}
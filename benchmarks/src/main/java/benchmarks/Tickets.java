@@ -0,0 +1,55 @@
+package benchmarks;
+
+import mainClasses.*;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Random;
+
+/**
+ * Генератор билетов для бенчмарков
+ * Билеты похожи на билеты из tickets.xml: короткие русские названия, несколько десятков мест проведения,
+ * даты в нескольких часовых поясах; при одном и том же зерне получаются одни и те же билеты
+ */
+final class Tickets {
+    private static final String[] NAMES = {"Концерт", "Опера", "Балет", "Матч", "Спектакль", "Выставка",
+            "Фестиваль", "Лекция", "Мюзикл", "Стендап"};
+    private static final String[] ZONES = {"Europe/Moscow", "Asia/Yekaterinburg", "Asia/Novosibirsk", "UTC"};
+    private static final int VENUES = 64;
+
+    private final Random random;
+    /** Названия, места проведения и даты общие для многих билетов, что экономит память на больших коллекциях */
+    private final String[] names = new String[NAMES.length * 1000];
+    private final Venue[] venues = new Venue[VENUES];
+    private final ZonedDateTime[] dates = new ZonedDateTime[256];
+
+    Tickets(long seed) {
+        random = new Random(seed);
+        for (int i = 0; i < names.length; i++) {
+            names[i] = NAMES[i / 1000] + " №" + i % 1000;
+        }
+        VenueType[] venueTypes = VenueType.values();
+        for (int i = 0; i < venues.length; i++) {
+            venues[i] = new Venue(i + 1, "Площадка " + (i + 1), 100L + random.nextInt(50_000),
+                    venueTypes[random.nextInt(venueTypes.length)]);
+        }
+        ZonedDateTime start = ZonedDateTime.of(2024, 1, 1, 0, 0, 0, 0, ZoneId.of("UTC"));
+        for (int i = 0; i < dates.length; i++) {
+            dates[i] = start.plusMinutes(random.nextInt(525_600))
+                    .withZoneSameInstant(ZoneId.of(ZONES[random.nextInt(ZONES.length)]));
+        }
+    }
+
+    /**
+     * Создает очередной билет
+     * @param id id билета
+     */
+    Ticket next(int id) {
+        TicketType[] ticketTypes = TicketType.values();
+        return new Ticket(id, names[random.nextInt(NAMES.length) * 1000 + random.nextInt(1000)],
+                new Coordinates(Math.round(random.nextDouble() * 10_000) / 100.0, random.nextInt(1000) - 414f),
+                dates[random.nextInt(dates.length)], 1 + random.nextInt(10_000), random.nextBoolean(),
+                ticketTypes[random.nextInt(ticketTypes.length)],
+                random.nextInt(8) == 0 ? null : venues[random.nextInt(venues.length)]);
+    }
+}
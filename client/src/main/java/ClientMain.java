@@ -11,6 +11,8 @@ public class ClientMain {
     /**
      * Точка входа в клиентское приложение
      * Устанавливает соединение с сервером и запускает интерактивный режим работы
+     * Адрес сервера задается переменной окружения SERVER_ADDRESS в виде хост:порт или unix:путь,
+     * по умолчанию localhost:5555
      *
      * @param args аргументы командной строки (не используются)
      * @throws Exception если возникли проблемы при работе приложения
@@ -18,7 +20,8 @@ public class ClientMain {
     public static void main(String[] args) throws Exception {
         TCPClient client = new TCPClient();
         try {
-            client.connect("localhost", 5555);
+            String address = System.getenv("SERVER_ADDRESS");
+            client.connect(TCPClient.parseAddress(address == null || address.isBlank() ? "localhost:5555" : address));
 
             UserInputScanner scanner = new UserInputScanner(client);
             scanner.startInteractiveMode();
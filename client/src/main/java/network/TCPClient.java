@@ -1,24 +1,85 @@
 package network;
 
+import protocol.Compression;
+import protocol.Frame;
+import protocol.FrameTooLargeException;
+import protocol.Frames;
+import protocol.Handshake;
+import protocol.WireCodec;
 import things.Request;
 import things.Response;
 
 import java.io.*;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * Класс, реализующий TCP клиент для взаимодействия с сервером
  * Обеспечивает установку соединения, отправку запросов и получение ответов
+ * Клиент на одном узле с сервером может подключаться через сокет Unix с тем же обменом кадрами
  */
 public class TCPClient {
-    /** Сокет для связи с сервером */
-    private Socket clientSocket;
-    /** Поток для отправки объектов на сервер */
-    private ObjectOutputStream out;
-    /** Поток для получения объектов от сервера */
-    private ObjectInputStream in;
+    /** Канал для связи с сервером */
+    private SocketChannel channel;
+    /** Поток для отправки кадров на сервер */
+    private DataOutputStream out;
+    /** Поток для получения кадров от сервера */
+    private DataInputStream in;
+    /** Способы кодирования, предлагаемые серверу, в порядке предпочтения */
+    private byte[] preferredCodecs = {WireCodec.BINARY_V2, WireCodec.BINARY, WireCodec.SERIALIZATION};
+    /** Способ кодирования, выбранный сервером при подключении */
+    private WireCodec codec;
+    /** Предлагать ли серверу сжатие при следующем подключении */
+    private boolean compressionRequested = true;
+    /** Согласовано ли сжатие с сервером при подключении */
+    private boolean compression;
+    /** Размер полезной нагрузки запроса в байтах, начиная с которого она сжимается */
+    private int compressionThreshold = 1024;
+    /** Наибольший размер кадра, который принимает клиент; сообщается серверу при рукопожатии */
+    private int maxFrameSize = Frames.MAX_FRAME_SIZE;
+    /** Наибольший размер кадра, который принимает сервер */
+    private int serverMaxFrameSize = Frames.MAX_FRAME_SIZE;
+    /** Согласована ли выгрузка файлов кадрами без способа кодирования */
+    private boolean fileTransfer;
+    /** Хеш таблицы команд сервера из последнего рукопожатия, 0 до первого подключения */
+    private int commandHash;
+    /** Адрес сервера для переподключения */
+    private SocketAddress address;
+    /** Генератор идентификаторов запросов */
+    private final AtomicLong nextRequestId = new AtomicLong();
+    /** Запросы текущего подключения, ожидающие ответа */
+    private volatile PendingRequests pendingRequests = new PendingRequests();
+    /** Наибольшее время ожидания ответа на запрос, за которое от сервера не пришло ни одной его части */
+    private int responseTimeoutMillis = 60000;
+    /** Интервал проверок связи в миллисекундах */
+    private int heartbeatIntervalMillis = 15000;
+    /** Планировщик проверок связи, общий для всех подключений клиента */
+    private ScheduledExecutorService heartbeats;
+    /** Периодическая проверка связи текущего подключения */
+    private ScheduledFuture<?> heartbeatTask;
+    /** Момент получения последнего кадра от сервера по System.nanoTime() */
+    private volatile long lastReceivedNanos;
 
     /**
      * Устанавливает соединение с сервером
@@ -28,47 +89,418 @@ public class TCPClient {
      * @throws IOException если произошла ошибка при установке соединения
      */
     public void connect(String ip, int port) throws IOException {
-        clientSocket = new Socket(ip, port);
-        out = new ObjectOutputStream(clientSocket.getOutputStream());
-        in = new ObjectInputStream(clientSocket.getInputStream());
-        System.out.println("Подключено к серверу " + ip + ":" + port);
+        connect(new InetSocketAddress(ip, port));
+    }
+
+    /**
+     * Устанавливает соединение с сервером по TCP или через сокет Unix
+     *
+     * @param address адрес сервера: InetSocketAddress или UnixDomainSocketAddress
+     * @throws IOException если произошла ошибка при установке соединения
+     */
+    public void connect(SocketAddress address) throws IOException {
+        this.address = address;
+        channel = address instanceof UnixDomainSocketAddress
+                ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+        try {
+            channel.connect(address);
+            if (channel.supportedOptions().contains(StandardSocketOptions.TCP_NODELAY)) {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+            out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            handshake();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        // Запросы нового подключения хранятся отдельно: поток чтения прежнего подключения завершает ошибкой только свои
+        PendingRequests requests = new PendingRequests();
+        pendingRequests = requests;
+        DataInputStream input = in;
+        WireCodec responseCodec = codec;
+        Thread reader = new Thread(() -> readResponses(input, responseCodec, requests), "response-reader");
+        reader.setDaemon(true);
+        reader.start();
+        startHeartbeat();
+        System.out.println("Подключено к серверу " + address);
+    }
+
+    /**
+     * Разбирает адрес сервера вида хост:порт или unix:путь
+     *
+     * @param value адрес сервера
+     * @return адрес для подключения
+     * @throws IllegalArgumentException если порт не указан или некорректен
+     */
+    public static SocketAddress parseAddress(String value) {
+        String address = value.trim();
+        if (address.startsWith("unix:")) {
+            return UnixDomainSocketAddress.of(address.substring("unix:".length()));
+        }
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("В адресе " + address + " не указан порт");
+        }
+        String host = address.substring(0, colon);
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        try {
+            return new InetSocketAddress(host, Integer.parseInt(address.substring(colon + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Некорректный порт в адресе " + address);
+        }
+    }
+
+    /**
+     * Предлагает серверу способы кодирования и запоминает выбранный им
+     * @throws IOException если сервер отклонил подключение или выбрал неизвестный способ кодирования
+     */
+    private void handshake() throws IOException {
+        byte features = (byte) (Handshake.FEATURE_FILE_TRANSFER | (compressionRequested ? Handshake.FEATURE_COMPRESSION : 0));
+        Handshake hello = new Handshake(preferredCodecs).withFeatures(features).withLimits(maxFrameSize, 0);
+        Frames.writeFrame(out, 0, hello.toBytes());
+        Handshake reply = Handshake.fromBytes(Frames.readFrame(in, maxFrameSize).getPayload());
+        if (reply.isRejected()) {
+            throw new IOException("Сервер отклонил подключение: " + reply.getRejectReason());
+        }
+        codec = reply.selectCodec();
+        compression = reply.hasFeature(Handshake.FEATURE_COMPRESSION);
+        fileTransfer = reply.hasFeature(Handshake.FEATURE_FILE_TRANSFER);
+        serverMaxFrameSize = reply.getMaxFrameSize();
+        if (codec == null) {
+            throw new IOException("Сервер выбрал неизвестный способ кодирования");
+        }
+        if (commandHash != 0 && reply.getCommandHash() != commandHash) {
+            System.out.println("Набор команд сервера изменился после переподключения, список команд можно получить командой help");
+        }
+        commandHash = reply.getCommandHash();
+    }
+
+    /**
+     * Запускает периодическую отправку проверок связи для текущего подключения
+     * Сервер закрывает соединения, от которых долго нет данных, поэтому простаивающий клиент
+     * отправляет проверки связи; если сервер перестал отвечать и на них, соединение разрывается
+     */
+    private void startHeartbeat() {
+        if (heartbeats == null) {
+            heartbeats = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        lastReceivedNanos = System.nanoTime();
+        SocketChannel current = channel;
+        heartbeatTask = heartbeats.scheduleAtFixedRate(() -> heartbeat(current),
+                heartbeatIntervalMillis, heartbeatIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Отправляет проверку связи или разрывает соединение, если сервер давно ничего не присылал
+     * @param connection канал подключения, для которого запущена проверка
+     */
+    private void heartbeat(SocketChannel connection) {
+        long silence = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastReceivedNanos);
+        if (silence > 3L * heartbeatIntervalMillis) {
+            // Закрытие канала завершает ошибкой все ожидающие ответа запросы
+            try {
+                connection.close();
+            } catch (IOException ignored) {
+                // сокет уже закрыт
+            }
+            return;
+        }
+        try {
+            sendAsync(new Request(Request.RequestType.HEARTBEAT));
+        } catch (IOException ignored) {
+            // о разрыве соединения сообщит поток чтения ответов
+        }
+    }
+
+    /**
+     * Задает интервал проверок связи для следующих подключений
+     * @param millis интервал в миллисекундах
+     */
+    public void setHeartbeatInterval(int millis) {
+        this.heartbeatIntervalMillis = millis;
+    }
+
+    /**
+     * Задает наибольшее время ожидания ответа: запрос завершается ошибкой, если за это время от сервера
+     * не пришло ни одной части ответа на него
+     * @param millis время ожидания в миллисекундах
+     */
+    public void setResponseTimeout(int millis) {
+        this.responseTimeoutMillis = millis;
+    }
+
+    /**
+     * Задает, предлагать ли серверу сжатие больших кадров при следующем подключении
+     * @param compression true, чтобы предложить сжатие
+     */
+    public void setCompression(boolean compression) {
+        this.compressionRequested = compression;
+    }
+
+    /**
+     * Задает размер запроса, начиная с которого он сжимается
+     * @param bytes порог в байтах
+     */
+    public void setCompressionThreshold(int bytes) {
+        this.compressionThreshold = bytes;
+    }
+
+    /**
+     * Задает наибольший размер кадра, который клиент готов принять; применяется при следующем подключении
+     * @param bytes размер кадра в байтах, не больше Frames.MAX_FRAME_SIZE
+     */
+    public void setMaxFrameSize(int bytes) {
+        this.maxFrameSize = Math.min(bytes, Frames.MAX_FRAME_SIZE);
+    }
+
+    /**
+     * Возвращает хеш таблицы команд сервера, полученный при рукопожатии
+     * @return хеш таблицы команд или 0, если сервер его не сообщил
+     */
+    public int getCommandHash() {
+        return commandHash;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    /**
+     * Задает способы кодирования, предлагаемые серверу при следующем подключении
+     * @param codecs идентификаторы способов кодирования в порядке предпочтения
+     */
+    public void setPreferredCodecs(byte... codecs) {
+        this.preferredCodecs = codecs;
+    }
+
+    /**
+     * Отправляет запрос на сервер, не дожидаясь ответа
+     * Запросу без идентификатора назначается новый; ответы на несколько отправленных подряд запросов
+     * могут прийти в любом порядке и сопоставляются с запросами по идентификатору
+     *
+     * @param request запрос для отправки
+     * @return ответ от сервера, который будет получен позже
+     * @throws IOException если произошла ошибка при отправке
+     */
+    public CompletableFuture<Response> sendAsync(Request request) throws IOException {
+        return sendAsync(request, null);
+    }
+
+    /**
+     * Отправляет запрос на сервер, не дожидаясь ответа, и передает получателю части результата
+     *
+     * @param request запрос для отправки
+     * @param chunkListener получатель частей результата или null
+     * @return последний ответ сервера на запрос, который будет получен позже
+     * @throws IOException если произошла ошибка при отправке
+     */
+    public CompletableFuture<Response> sendAsync(Request request, Consumer<Response> chunkListener) throws IOException {
+        return send(request, chunkListener, null).future;
+    }
+
+    /**
+     * Отправляет запрос на сервер, регистрируя получателей частей ответа в запросах текущего подключения
+     *
+     * @param request запрос для отправки
+     * @param chunkListener получатель частей результата или null
+     * @param fileListener получатель частей файла или null
+     * @return ожидающий ответа запрос
+     * @throws IOException если произошла ошибка при отправке
+     */
+    private PendingRequest send(Request request, Consumer<Response> chunkListener, Consumer<byte[]> fileListener) throws IOException {
+        if (request.getRequestId() == 0) {
+            request.setRequestId(nextRequestId.incrementAndGet());
+        }
+        byte[] payload = codec.encodeRequest(request);
+        if (payload.length > serverMaxFrameSize) {
+            // Сервер распаковывает кадр не больше своего предела, поэтому сжатие такой запрос не спасет
+            throw new FrameTooLargeException("Запрос размером " + payload.length + " байт превышает наибольший размер кадра сервера "
+                    + serverMaxFrameSize + " байт");
+        }
+        boolean compressed = false;
+        if (compression && payload.length >= compressionThreshold) {
+            byte[] packed = Compression.deflate(payload);
+            if (packed.length < payload.length) {
+                payload = packed;
+                compressed = true;
+            }
+        }
+        PendingRequest pending = new PendingRequest(chunkListener, fileListener);
+        PendingRequests requests = pendingRequests;
+        requests.register(request.getRequestId(), pending);
+        try {
+            synchronized (out) {
+                Frames.writeFrame(out, request.getRequestId(), payload, compressed);
+            }
+        } catch (IOException e) {
+            requests.remove(request.getRequestId(), pending);
+            throw e;
+        }
+        return pending;
     }
 
     /**
      * Отправляет запрос на сервер и получает ответ
-     * Метод синхронизирован для обеспечения потокобезопасности
      *
      * @param request запрос для отправки
      * @return ответ от сервера
      * @throws IOException если произошла ошибка при обмене данными
      */
     public Response sendRequest(Request request) throws IOException {
-        try {  // Синхронизация для потокобезопасности
-            out.writeObject(request);
-                out.flush();
-                return (Response) in.readObject();
-        } catch (ClassNotFoundException e) {
-            throw new IOException("Ошибка десериализации", e);
-        } catch (IOException e) {
-            // При разрыве соединения пробуем переподключиться
-            reconnect();
-            throw e;
-        }
+        return sendRequest(request, null);
+    }
+
+    /**
+     * Запрашивает большой результат частями и передает их получателю по мере поступления
+     *
+     * @param commandName имя команды
+     * @param args аргументы команды
+     * @param chunkListener получатель частей результата
+     * @return завершающий ответ сервера: признак окончания или ошибка
+     * @throws IOException если произошла ошибка при обмене данными
+     */
+    public Response sendStreaming(String commandName, String[] args, Consumer<Response> chunkListener) throws IOException {
+        Request request = new Request(commandName, args, null, Request.RequestType.HUGE_CONTENT);
+        return sendRequest(request, chunkListener);
     }
 
+    /**
+     * Выгружает файл коллекции с сервера в указанный файл
+     * Части файла записываются на диск по мере поступления, не накапливаясь в памяти
+     *
+     * @param target путь к файлу, в который сохраняется коллекция
+     * @return завершающий ответ сервера: признак окончания с размером файла или ошибка
+     * @throws IOException если произошла ошибка при обмене данными или при записи файла
+     */
+    public Response export(Path target) throws IOException {
+        if (!fileTransfer) {
+            throw new IOException("Сервер не поддерживает выгрузку файлов");
+        }
+        Request request = new Request("export", new String[0]);
+        IOException[] failure = new IOException[1];
+        long[] written = new long[1];
+        try (FileChannel file = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Response end = sendRequest(request, null, part -> {
+                if (failure[0] != null) return;
+                try {
+                    ByteBuffer buffer = ByteBuffer.wrap(part);
+                    while (buffer.hasRemaining()) {
+                        file.write(buffer);
+                    }
+                    written[0] += part.length;
+                } catch (IOException e) {
+                    // Остальные части все равно нужно дочитать из соединения, поэтому ошибка запоминается
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            if (end.getType() == Response.ResponseType.END_OF_CONTENT && !String.valueOf(written[0]).equals(end.getMessage())) {
+                throw new IOException("Получено " + written[0] + " байт из " + end.getMessage());
+            }
+            return end;
+        }
+    }
 
+    private Response sendRequest(Request request, Consumer<Response> chunkListener) throws IOException {
+        return sendRequest(request, chunkListener, null);
+    }
 
+    private Response sendRequest(Request request, Consumer<Response> chunkListener, Consumer<byte[]> fileListener) throws IOException {
+        try {
+            return await(send(request, chunkListener, fileListener));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Ожидание ответа прервано");
+        } catch (FrameTooLargeException e) {
+            // Запрос не был отправлен, соединение исправно
+            throw e;
+        } catch (ExecutionException | IOException e) {
+            // При разрыве соединения пробуем переподключиться
+            reconnect();
+            if (e instanceof IOException) throw (IOException) e;
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
 
+    /**
+     * Дожидается ответа на запрос, пока от сервера приходят части ответа на него
+     *
+     * @param pending ожидающий ответа запрос
+     * @return ответ сервера
+     * @throws SocketTimeoutException если за время ожидания от сервера не пришло ни одной части ответа
+     */
+    private Response await(PendingRequest pending) throws InterruptedException, ExecutionException, SocketTimeoutException {
+        long timeout = TimeUnit.MILLISECONDS.toNanos(responseTimeoutMillis);
+        while (true) {
+            long wait = pending.progressNanos + timeout - System.nanoTime();
+            if (wait <= 0) {
+                throw new SocketTimeoutException("Сервер не ответил на запрос за " + responseTimeoutMillis + " мс");
+            }
+            try {
+                return pending.future.get(wait, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                // за время ожидания могли прийти части ответа, тогда ожидание продолжается
+            }
+        }
+    }
 
+    /**
+     * Читает ответы сервера и передает их ожидающим запросам
+     * Выполняется в отдельном потоке до разрыва соединения
+     * @param input поток чтения кадров подключения
+     * @param responseCodec способ кодирования, выбранный при подключении
+     * @param requests запросы, отправленные через это подключение
+     */
+    private void readResponses(DataInputStream input, WireCodec responseCodec, PendingRequests requests) {
+        try {
+            while (true) {
+                Frame frame = Frames.readFrame(input, maxFrameSize);
+                lastReceivedNanos = System.nanoTime();
+                PendingRequest pending = requests.get(frame.getId());
+                if (pending != null) {
+                    pending.progressNanos = lastReceivedNanos;
+                }
+                if (frame.isRaw()) {
+                    if (pending != null && pending.fileListener != null) pending.fileListener.accept(frame.getPayload());
+                    continue;
+                }
+                Response response;
+                try {
+                    response = responseCodec.decodeResponse(frame.getContent(maxFrameSize));
+                } catch (IOException e) {
+                    if (pending != null && requests.remove(frame.getId(), pending)) pending.future.completeExceptionally(e);
+                    continue;
+                }
+                response.setRequestId(frame.getId());
+                if (response.getType() == Response.ResponseType.CHUNK) {
+                    if (pending != null && pending.chunkListener != null) pending.chunkListener.accept(response);
+                    continue;
+                }
+                if (pending != null && requests.remove(frame.getId(), pending)) pending.future.complete(response);
+            }
+        } catch (IOException e) {
+            requests.close(new IOException("Соединение с сервером разорвано", e));
+        }
+    }
 
     /**
-     * Переподключается к серверу в случае разрыва соединения
+     * Переподключается к серверу по тому же адресу в случае разрыва соединения
      *
      * @throws IOException если не удалось переподключиться
      */
-    private void reconnect() throws IOException {
+    public void reconnect() throws IOException {
         disconnect();
-        connect("localhost", 8000); // Или параметры из конфига
+        connect(address);
     }
 
     /**
@@ -78,16 +510,69 @@ public class TCPClient {
      * @throws IOException если произошла ошибка при закрытии соединения
      */
     public void disconnect() throws IOException {
+        if (heartbeatTask != null) {
+            heartbeatTask.cancel(false);
+        }
         try {
             out.close();
             in.close();
         } finally {
-            clientSocket.close();
+            channel.close();
         }
     }
 
 
-    public Socket getClientSocket() {
-        return clientSocket;
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Запрос, ожидающий ответа: будущий ответ, получатели частей ответа и момент получения последней части
+     */
+    private static final class PendingRequest {
+        private final CompletableFuture<Response> future = new CompletableFuture<>();
+        private final Consumer<Response> chunkListener;
+        private final Consumer<byte[]> fileListener;
+        private volatile long progressNanos = System.nanoTime();
+
+        PendingRequest(Consumer<Response> chunkListener, Consumer<byte[]> fileListener) {
+            this.chunkListener = chunkListener;
+            this.fileListener = fileListener;
+        }
+    }
+
+    /**
+     * Запросы одного подключения, ожидающие ответа, по идентификаторам
+     * После разрыва подключения запрос, зарегистрированный в нем, сразу завершается ошибкой и не ждет ответа вечно
+     */
+    private static final class PendingRequests {
+        private final Map<Long, PendingRequest> byId = new ConcurrentHashMap<>();
+        /** Причина разрыва подключения, null пока оно открыто */
+        private volatile IOException closed;
+
+        void register(long id, PendingRequest pending) {
+            byId.put(id, pending);
+            // Разрыв мог произойти одновременно с регистрацией; тогда запрос завершает ошибкой тот, кто удалит его первым
+            IOException cause = closed;
+            if (cause != null && byId.remove(id, pending)) {
+                pending.future.completeExceptionally(cause);
+            }
+        }
+
+        PendingRequest get(long id) {
+            return byId.get(id);
+        }
+
+        boolean remove(long id, PendingRequest pending) {
+            return byId.remove(id, pending);
+        }
+
+        void close(IOException cause) {
+            closed = cause;
+            for (Long id : byId.keySet()) {
+                PendingRequest pending = byId.remove(id);
+                if (pending != null) pending.future.completeExceptionally(cause);
+            }
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,152 @@
+package network;
+
+import protocol.Datagram;
+import protocol.WireCodec;
+import things.Request;
+import things.Response;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.PortUnreachableException;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Клиент для коротких запросов к серверу по UDP без установки соединения
+ * Подходит для периодического опроса info или count_greater_than_type агентом мониторинга; на другие команды
+ * сервер по UDP не отвечает, и запрос завершится по истечении времени ожидания.
+ * Датаграмма может потеряться, поэтому запрос повторяется с тем же идентификатором, а время ожидания ответа
+ * удваивается с каждой попыткой; ответы на другие идентификаторы считаются запоздавшими и отбрасываются
+ */
+public class UDPClient implements Closeable {
+    private final DatagramChannel channel;
+    private final Selector selector;
+    /** Способ кодирования запросов и ответов */
+    private final WireCodec codec = WireCodec.forId(WireCodec.BINARY_V2);
+    /** Генератор идентификаторов запросов */
+    private final AtomicLong nextRequestId = new AtomicLong();
+    /** Буфер для приема ответов */
+    private final ByteBuffer buffer = ByteBuffer.allocate(Datagram.MAX_SIZE);
+    /** Время ожидания ответа на первую попытку в миллисекундах */
+    private int timeoutMillis = 200;
+    /** Количество попыток отправки запроса */
+    private int attempts = 3;
+
+    /**
+     * Создает клиент, отправляющий запросы на указанный адрес
+     *
+     * @param address адрес приема датаграмм сервера
+     * @throws IOException если не удалось открыть канал
+     */
+    public UDPClient(SocketAddress address) throws IOException {
+        channel = DatagramChannel.open();
+        channel.connect(address);
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    /**
+     * Задает время ожидания ответа на первую попытку; каждая следующая попытка ждет вдвое дольше
+     * @param millis время в миллисекундах
+     */
+    public void setTimeout(int millis) {
+        this.timeoutMillis = millis;
+    }
+
+    /**
+     * Задает количество попыток отправки запроса
+     * @param attempts количество попыток, не меньше одной
+     */
+    public void setAttempts(int attempts) {
+        this.attempts = Math.max(1, attempts);
+    }
+
+    /**
+     * Выполняет команду на сервере и ждет ответа, повторяя запрос при потере датаграмм
+     * Методы клиента не предназначены для одновременного вызова из нескольких потоков
+     *
+     * @param commandName имя команды
+     * @param args аргументы команды
+     * @return ответ сервера
+     * @throws SocketTimeoutException если сервер не ответил ни на одну попытку
+     * @throws IOException если возникла ошибка при обмене данными
+     */
+    public Response query(String commandName, String... args) throws IOException {
+        long id = nextRequestId.incrementAndGet();
+        ByteBuffer request = new Datagram(codec.getId(), id, codec.encodeRequest(new Request(commandName, args))).toBuffer();
+        long timeout = timeoutMillis;
+        for (int attempt = 0; attempt < attempts; attempt++) {
+            request.rewind();
+            try {
+                channel.write(request);
+                Response response = awaitResponse(id, timeout);
+                if (response != null) {
+                    return response;
+                }
+            } catch (PortUnreachableException e) {
+                // Сервер еще не открыл прием датаграмм, следующая попытка может оказаться успешной
+                sleep(timeout);
+            }
+            timeout *= 2;
+        }
+        throw new SocketTimeoutException("Сервер не ответил на запрос " + commandName + " за " + attempts + " попыток");
+    }
+
+    /**
+     * Ждет ответа с указанным идентификатором
+     * @param id идентификатор запроса
+     * @param timeout время ожидания в миллисекундах
+     * @return ответ или null, если он не пришел вовремя
+     * @throws IOException если возникла ошибка при приеме
+     */
+    private Response awaitResponse(long id, long timeout) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        long remaining;
+        while ((remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())) > 0) {
+            selector.select(remaining);
+            selector.selectedKeys().clear();
+            buffer.clear();
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                try {
+                    Datagram datagram = Datagram.fromBuffer(buffer);
+                    if (datagram.getId() == id && datagram.getCodec() == codec.getId()) {
+                        Response response = codec.decodeResponse(datagram.getPayload());
+                        response.setRequestId(id);
+                        return response;
+                    }
+                } catch (IOException ignored) {
+                    // поврежденный или посторонний пакет
+                }
+                buffer.clear();
+            }
+        }
+        return null;
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Ожидание ответа прервано");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            selector.close();
+        } finally {
+            channel.close();
+        }
+    }
+}
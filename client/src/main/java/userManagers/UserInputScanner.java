@@ -3,6 +3,7 @@ package userManagers;
 import exceptions.ScriptRecursionException;
 import mainClasses.Ticket;
 import network.TCPClient;
+import protocol.FrameTooLargeException;
 import things.Request;
 import things.Response;
 
@@ -30,6 +31,14 @@ public class UserInputScanner {
     private static final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
     /** Множество выполненных скриптов для предотвращения рекурсии */
     private final Set<String> executedScripts = new HashSet<>();
+    /** Команды, результат которых запрашивается у сервера частями */
+    private static final Set<String> streamedCommands = Set.of(
+            "show", "sort", "print_field_ascending_venue", "print_field_descending_price");
+
+    /** Префикс строки с версией коллекции в ответе show_delta */
+    private static final String VERSION_PREFIX = "Версия коллекции: ";
+    /** Последняя полученная версия коллекции; 0 означает, что коллекция еще не запрашивалась */
+    private long knownVersion;
 
     public UserInputScanner(TCPClient client) {
         this.client = client;
@@ -63,6 +72,20 @@ public class UserInputScanner {
                     continue;
                 }
 
+                String[] parts = input.split(" ", 2);
+                if ("show_delta".equals(parts[0])) {
+                    printDelta(parts.length > 1 ? parts[1].trim() : String.valueOf(knownVersion));
+                    continue;
+                }
+                if ("export".equals(parts[0])) {
+                    exportCollection(parts.length > 1 ? parts[1].trim() : "");
+                    continue;
+                }
+                if (streamedCommands.contains(parts[0])) {
+                    printStreamed(parts[0], parts.length > 1 ? parts[1].split(" ") : new String[0]);
+                    continue;
+                }
+
                 // создаём запрос или выполняем скрипт
                 Request request = createRequest(input);
                 if (request == null) continue;
@@ -75,22 +98,27 @@ public class UserInputScanner {
                     System.out.println("Сервер запрашивает данные о билете.");
                     Ticket newTicket = helper.inputTicket();
                     Request newRequest = new Request(newTicket);
+                    newRequest.setRequestId(response.getRequestId());
                     Response newResponse = client.sendRequest(newRequest);
                     System.out.println("\n" + newResponse.getMessage());
                 } else if (response.getType() == Response.ResponseType.ERROR) {
                     System.out.println("Ошибка: " + response.getMessage());
+                } else if (response.getType() == Response.ResponseType.RATE_LIMITED) {
+                    // Запрос не выполнялся, поэтому его можно безопасно отправить повторно
+                    System.out.println("Сервер перегружен запросами: " + response.getMessage());
                 } else {
                     System.out.println("\n" + response.getMessage());
                 }
 
             } catch (ScriptRecursionException exception) {
                 System.out.println(exception.getMessage());
+            } catch (FrameTooLargeException exception) {
+                System.out.println("Ошибка: " + exception.getMessage());
             } catch (Exception e) {
                 System.out.println("Ошибка подключения к серверу: " + e.getMessage());
                 try {
                     System.out.println("Пытаемся восстановить подключение...");
-                    client.disconnect();
-                    client.connect("localhost", 5555); // тот же порт, что и в ClientMain
+                    client.reconnect(); // тот же адрес, что и в ClientMain
                 } catch (IOException ex) {
                     System.out.println("Не удалось восстановить соединение: " + ex.getMessage());
                     break;
@@ -100,6 +128,62 @@ public class UserInputScanner {
         scanner.close();
     }
 
+    /**
+     * Запрашивает результат команды частями и выводит каждую часть сразу после получения
+     */
+    private void printStreamed(String commandName, String[] args) throws IOException {
+        System.out.println();
+        Response end = client.sendStreaming(commandName, args, chunk -> System.out.print(chunk.getMessage()));
+        if (end.getType() == Response.ResponseType.ERROR) {
+            System.out.println("Ошибка: " + end.getMessage());
+        } else {
+            System.out.println();
+        }
+    }
+
+    /**
+     * Запрашивает изменения коллекции после указанной версии и запоминает полученную версию
+     * Без аргумента используется версия из предыдущего ответа, поэтому повторный запрос возвращает только новые изменения
+     */
+    private void printDelta(String since) throws IOException {
+        System.out.println();
+        long[] version = {-1};
+        Response end = client.sendStreaming("show_delta", new String[]{since}, chunk -> {
+            String message = chunk.getMessage();
+            if (version[0] < 0 && message.startsWith(VERSION_PREFIX)) {
+                int lineEnd = message.indexOf('\n');
+                version[0] = Long.parseLong(message.substring(VERSION_PREFIX.length(), lineEnd < 0 ? message.length() : lineEnd));
+            }
+            System.out.print(message);
+        });
+        if (end.getType() == Response.ResponseType.ERROR) {
+            System.out.println("Ошибка: " + end.getMessage());
+        } else {
+            System.out.println();
+            if (version[0] >= 0) {
+                knownVersion = version[0];
+            }
+        }
+    }
+
+    /**
+     * Выгружает файл коллекции с сервера в указанный пользователем файл
+     */
+    private void exportCollection(String path) throws IOException {
+        if (path.isEmpty()) {
+            System.out.println("Ошибка: укажите путь к файлу для выгрузки");
+            return;
+        }
+        Response end = client.export(Path.of(path));
+        if (end.getType() == Response.ResponseType.END_OF_CONTENT) {
+            System.out.println("Коллекция выгружена в " + path + ", байт: " + end.getMessage());
+        } else if (end.getType() == Response.ResponseType.RATE_LIMITED) {
+            System.out.println("Сервер перегружен запросами: " + end.getMessage());
+        } else {
+            System.out.println("Ошибка: " + end.getMessage());
+        }
+    }
+
     /**
      * Создаёт запрос на основе пользовательского ввода
      */
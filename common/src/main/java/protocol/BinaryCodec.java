@@ -0,0 +1,119 @@
+package protocol;
+
+import mainClasses.Ticket;
+import things.Request;
+import things.Response;
+
+import java.io.*;
+
+/**
+ * Компактное двоичное кодирование запросов и ответов
+ * Каждая полезная нагрузка начинается с номера версии формата, поля пишутся в фиксированном порядке,
+ * отсутствующие значения отмечаются признаками вместо описаний классов; билеты кодируются {@link TicketCodec}
+ */
+public class BinaryCodec implements WireCodec {
+    public static final BinaryCodec INSTANCE = new BinaryCodec();
+    /** Версия формата; во второй версии длины и билеты записываются числами переменной длины */
+    public static final byte FORMAT_VERSION = 2;
+
+    @Override
+    public byte getId() {
+        return BINARY_V2;
+    }
+
+    @Override
+    public byte[] encodeRequest(Request request) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(FORMAT_VERSION);
+        writeEnum(out, request.getType());
+        TicketCodec.writeString(out, request.getCommandName());
+        writeStrings(out, request.getArgs());
+        TicketCodec.writeString(out, request.getScriptContent());
+        TicketCodec.writeTicket(out, request.getWorker());
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Request decodeRequest(byte[] payload) throws IOException {
+        DataInputStream in = open(payload);
+        Request.RequestType type = readEnum(in, Request.RequestType.values());
+        String commandName = TicketCodec.readString(in);
+        String[] args = readStrings(in);
+        String scriptContent = TicketCodec.readString(in);
+        Ticket ticket = TicketCodec.readTicket(in);
+        return new Request(type, commandName, args, scriptContent, ticket);
+    }
+
+    @Override
+    public byte[] encodeResponse(Response response) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(FORMAT_VERSION);
+        writeEnum(out, response.getType());
+        out.writeBoolean(response.isSuccess());
+        TicketCodec.writeString(out, response.getMessage());
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Response decodeResponse(byte[] payload) throws IOException {
+        DataInputStream in = open(payload);
+        Response response = new Response();
+        response.setType(readEnum(in, Response.ResponseType.values()));
+        response.setSuccess(in.readBoolean());
+        response.setMessage(TicketCodec.readString(in));
+        return response;
+    }
+
+    /**
+     * Открывает полезную нагрузку для чтения и проверяет версию формата
+     */
+    private static DataInputStream open(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Неподдерживаемая версия формата: " + version);
+        }
+        return in;
+    }
+
+    private static void writeEnum(DataOutputStream out, Enum<?> value) throws IOException {
+        out.writeByte(value == null ? -1 : value.ordinal());
+    }
+
+    private static <E extends Enum<E>> E readEnum(DataInputStream in, E[] values) throws IOException {
+        int ordinal = in.readByte();
+        if (ordinal < 0) return null;
+        if (ordinal >= values.length) {
+            throw new IOException("Некорректное значение перечисления: " + ordinal);
+        }
+        return values[ordinal];
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+        if (values == null) {
+            out.writeByte(0);
+            return;
+        }
+        TicketCodec.writeVarInt(out, values.length + 1);
+        for (String value : values) {
+            TicketCodec.writeString(out, value);
+        }
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        int length = TicketCodec.readVarInt(in) - 1;
+        if (length < 0) return null;
+        Frames.checkLength(length);
+        // Каждая строка занимает хотя бы один байт, поэтому поврежденное количество не приводит к выделению памяти
+        if (length > in.available()) {
+            throw new IOException("Количество строк " + length + " больше оставшихся данных");
+        }
+        String[] values = new String[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = TicketCodec.readString(in);
+        }
+        return values;
+    }
+}
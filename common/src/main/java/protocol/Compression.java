@@ -0,0 +1,83 @@
+package protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Сжатие полезной нагрузки кадров алгоритмом Deflate
+ * Используется, только если обе стороны договорились о нем при рукопожатии
+ */
+public final class Compression {
+    /** Уровень сжатия: текст коллекции хорошо сжимается и на самом быстром уровне */
+    private static final int LEVEL = Deflater.BEST_SPEED;
+
+    private Compression() {}
+
+    /**
+     * Сжимает данные
+     * @param data исходные данные
+     * @return сжатые данные
+     */
+    public static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(LEVEL);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Восстанавливает сжатые данные, ограничивая их размер наибольшим размером кадра протокола
+     * @param data сжатые данные
+     * @return исходные данные
+     * @throws IOException если данные повреждены или после распаковки превышают допустимый размер кадра
+     */
+    public static byte[] inflate(byte[] data) throws IOException {
+        return inflate(data, Frames.MAX_FRAME_SIZE);
+    }
+
+    /**
+     * Восстанавливает сжатые данные
+     * Распаковка прекращается, как только данные превышают предел, поэтому небольшой сжатый кадр
+     * не может занять в памяти больше размера кадра, о котором стороны договорились при рукопожатии
+     * @param data сжатые данные
+     * @param maxLength наибольший размер распакованных данных в байтах
+     * @return исходные данные
+     * @throws IOException если данные повреждены или после распаковки превышают указанный размер
+     */
+    public static byte[] inflate(byte[] data, int maxLength) throws IOException {
+        int limit = Math.min(maxLength, Frames.MAX_FRAME_SIZE);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(limit, data.length * 4));
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Сжатые данные обрываются");
+                }
+                out.write(buffer, 0, count);
+                if (out.size() > limit) {
+                    throw new IOException("Распакованный кадр превышает " + limit + " байт");
+                }
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Сжатые данные повреждены", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package protocol;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Датаграмма протокола для коротких запросов без установки соединения
+ * Рукопожатия нет, поэтому каждая датаграмма сама указывает способ кодирования; заголовок состоит из признака
+ * протокола (4 байта), идентификатора способа кодирования (1 байт) и идентификатора запроса (8 байт),
+ * по которому клиент отличает ответ на повторную попытку от запоздавшего ответа на предыдущий запрос
+ */
+public final class Datagram {
+    /** Признак датаграммы протокола, отличающий ее от посторонних пакетов */
+    public static final int MAGIC = 0x544B5444;
+    /** Размер заголовка датаграммы в байтах */
+    public static final int HEADER_SIZE = 13;
+    /** Максимальный размер датаграммы вместе с заголовком */
+    public static final int MAX_SIZE = 8 * 1024;
+
+    private final byte codec;
+    private final long id;
+    private final byte[] payload;
+
+    /**
+     * Создает датаграмму
+     * @param codec идентификатор способа кодирования полезной нагрузки
+     * @param id идентификатор запроса
+     * @param payload полезная нагрузка
+     */
+    public Datagram(byte codec, long id, byte[] payload) {
+        this.codec = codec;
+        this.id = id;
+        this.payload = payload;
+    }
+
+    public byte getCodec() {
+        return codec;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    /**
+     * Формирует буфер с датаграммой для отправки
+     * @return буфер, готовый к записи
+     * @throws IOException если датаграмма превышает допустимый размер
+     */
+    public ByteBuffer toBuffer() throws IOException {
+        if (HEADER_SIZE + payload.length > MAX_SIZE) {
+            throw new IOException("Датаграмма превышает " + MAX_SIZE + " байт");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        buffer.putInt(MAGIC).put(codec).putLong(id).put(payload).flip();
+        return buffer;
+    }
+
+    /**
+     * Восстанавливает датаграмму из полученного буфера
+     * @param buffer буфер, подготовленный для чтения
+     * @return датаграмма
+     * @throws IOException если пакет не является датаграммой протокола
+     */
+    public static Datagram fromBuffer(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Пакет не является датаграммой протокола");
+            }
+            byte codec = buffer.get();
+            long id = buffer.getLong();
+            byte[] payload = new byte[buffer.remaining()];
+            buffer.get(payload);
+            return new Datagram(codec, id, payload);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Датаграмма короче заголовка", e);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package protocol;
+
+import java.io.IOException;
+
+/**
+ * Кадр протокола: идентификатор запроса из заголовка и полезная нагрузка
+ * По идентификатору ответ сопоставляется с запросом без разбора полезной нагрузки
+ */
+public final class Frame {
+    private final long id;
+    private final byte[] payload;
+    /** Признак сжатой полезной нагрузки */
+    private final boolean compressed;
+    /** Признак части файла, передаваемой без способа кодирования */
+    private final boolean raw;
+
+    /**
+     * Создает кадр с несжатой полезной нагрузкой
+     * @param id идентификатор запроса, 0 для служебных кадров
+     * @param payload полезная нагрузка
+     */
+    public Frame(long id, byte[] payload) {
+        this(id, payload, false);
+    }
+
+    /**
+     * Создает кадр
+     * @param id идентификатор запроса, 0 для служебных кадров
+     * @param payload полезная нагрузка в том виде, в каком она передается
+     * @param compressed признак сжатой полезной нагрузки
+     */
+    public Frame(long id, byte[] payload, boolean compressed) {
+        this(id, payload, compressed, false);
+    }
+
+    /**
+     * Создает кадр
+     * @param id идентификатор запроса, 0 для служебных кадров
+     * @param payload полезная нагрузка в том виде, в каком она передается
+     * @param compressed признак сжатой полезной нагрузки
+     * @param raw признак части файла, которую не нужно декодировать
+     */
+    public Frame(long id, byte[] payload, boolean compressed, boolean raw) {
+        this.id = id;
+        this.payload = payload;
+        this.compressed = compressed;
+        this.raw = raw;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public boolean isRaw() {
+        return raw;
+    }
+
+    /**
+     * Возвращает полезную нагрузку, распакованную, если она была сжата
+     * @return исходная полезная нагрузка
+     * @throws IOException если сжатые данные повреждены
+     */
+    public byte[] getContent() throws IOException {
+        return getContent(Frames.MAX_FRAME_SIZE);
+    }
+
+    /**
+     * Возвращает полезную нагрузку, распакованную, если она была сжата
+     * @param maxLength наибольший размер распакованной нагрузки, которую принимает получатель
+     * @return исходная полезная нагрузка
+     * @throws IOException если сжатые данные повреждены или после распаковки превышают указанный размер
+     */
+    public byte[] getContent(int maxLength) throws IOException {
+        return compressed ? Compression.inflate(payload, maxLength) : payload;
+    }
+}
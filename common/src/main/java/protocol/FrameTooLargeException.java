@@ -0,0 +1,13 @@
+package protocol;
+
+import java.io.IOException;
+
+/**
+ * Сообщение не помещается в наибольший размер кадра, согласованный при рукопожатии
+ * Сообщение не было отправлено, поэтому соединение остается исправным
+ */
+public class FrameTooLargeException extends IOException {
+    public FrameTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,197 @@
+package protocol;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Вспомогательный класс для обмена сообщениями кадрами фиксированного формата
+ * Каждый кадр состоит из заголовка (4 байта длины полезной нагрузки и 8 байт идентификатора запроса)
+ * и полезной нагрузки, поэтому границы сообщений известны без разбора самого сериализованного объекта
+ * Старший бит поля длины означает, что полезная нагрузка сжата, следующий за ним - что полезная нагрузка
+ * является частью файла и передается как есть, без способа кодирования
+ */
+public final class Frames {
+    /** Размер заголовка кадра в байтах */
+    public static final int HEADER_SIZE = 12;
+    /** Максимально допустимый размер полезной нагрузки кадра */
+    public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+    /** Бит поля длины, отмечающий сжатую полезную нагрузку */
+    public static final int COMPRESSED_FLAG = 0x80000000;
+    /** Бит поля длины, отмечающий часть файла, не закодированную способом кодирования */
+    public static final int RAW_FLAG = 0x40000000;
+    /** Маска длины полезной нагрузки в поле длины */
+    public static final int LENGTH_MASK = ~(COMPRESSED_FLAG | RAW_FLAG);
+
+    private Frames() {}
+
+    /**
+     * Сериализует объект в массив байт
+     * @param object объект для сериализации
+     * @return сериализованное представление объекта
+     * @throws IOException если объект не удалось сериализовать
+     */
+    public static byte[] serialize(Serializable object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Восстанавливает объект из массива байт
+     * @param payload сериализованное представление объекта
+     * @return восстановленный объект
+     * @throws IOException если данные повреждены или класс объекта не найден
+     */
+    public static Object deserialize(byte[] payload) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            return in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Ошибка десериализации", e);
+        }
+    }
+
+    /**
+     * Записывает кадр в поток и сбрасывает буфер
+     * @param out поток для записи
+     * @param id идентификатор запроса
+     * @param payload полезная нагрузка кадра
+     * @throws IOException если возникла ошибка при записи
+     */
+    public static void writeFrame(DataOutputStream out, long id, byte[] payload) throws IOException {
+        writeFrame(out, id, payload, false);
+    }
+
+    /**
+     * Записывает кадр в поток и сбрасывает буфер
+     * @param out поток для записи
+     * @param id идентификатор запроса
+     * @param payload полезная нагрузка кадра
+     * @param compressed признак сжатой полезной нагрузки
+     * @throws IOException если возникла ошибка при записи
+     */
+    public static void writeFrame(DataOutputStream out, long id, byte[] payload, boolean compressed) throws IOException {
+        checkLength(payload.length);
+        out.writeInt(lengthField(payload.length, compressed));
+        out.writeLong(id);
+        out.write(payload);
+        out.flush();
+    }
+
+    /**
+     * Читает из потока один целый кадр
+     * @param in поток для чтения
+     * @return прочитанный кадр
+     * @throws IOException если поток закрыт или заголовок кадра некорректен
+     */
+    public static Frame readFrame(DataInputStream in) throws IOException {
+        return readFrame(in, MAX_FRAME_SIZE);
+    }
+
+    /**
+     * Читает кадр из потока, отклоняя кадры длиннее согласованного при рукопожатии размера
+     * @param in поток для чтения
+     * @param maxLength наибольшая допустимая длина полезной нагрузки
+     * @return прочитанный кадр
+     * @throws IOException если возникла ошибка при чтении или длина кадра недопустима
+     */
+    public static Frame readFrame(DataInputStream in, int maxLength) throws IOException {
+        int field = in.readInt();
+        int length = field & LENGTH_MASK;
+        checkLength(length, maxLength);
+        long id = in.readLong();
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return new Frame(id, payload, isCompressed(field), isRaw(field));
+    }
+
+    /**
+     * Формирует буфер с кадром для записи в неблокирующий канал
+     * @param id идентификатор запроса
+     * @param payload полезная нагрузка кадра
+     * @return буфер, готовый к записи
+     * @throws IOException если размер полезной нагрузки превышает допустимый
+     */
+    public static ByteBuffer toBuffer(long id, byte[] payload) throws IOException {
+        return toBuffer(id, payload, false);
+    }
+
+    /**
+     * Формирует буфер с кадром для записи в неблокирующий канал
+     * @param id идентификатор запроса
+     * @param payload полезная нагрузка кадра
+     * @param compressed признак сжатой полезной нагрузки
+     * @return буфер, готовый к записи
+     * @throws IOException если размер полезной нагрузки превышает допустимый
+     */
+    public static ByteBuffer toBuffer(long id, byte[] payload, boolean compressed) throws IOException {
+        checkLength(payload.length);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        buffer.putInt(lengthField(payload.length, compressed)).putLong(id).put(payload).flip();
+        return buffer;
+    }
+
+    /**
+     * Формирует заголовок кадра с частью файла, тело которого будет записано в канал отдельно
+     * @param id идентификатор запроса
+     * @param length длина части файла
+     * @return буфер с заголовком, готовый к записи
+     * @throws IOException если длина превышает допустимую
+     */
+    public static ByteBuffer rawHeader(long id, int length) throws IOException {
+        checkLength(length);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(length | RAW_FLAG).putLong(id).flip();
+        return header;
+    }
+
+    /**
+     * Формирует поле длины заголовка кадра
+     * @param length длина полезной нагрузки
+     * @param compressed признак сжатой полезной нагрузки
+     * @return значение поля длины
+     */
+    public static int lengthField(int length, boolean compressed) {
+        return compressed ? length | COMPRESSED_FLAG : length;
+    }
+
+    /**
+     * Проверяет, отмечена ли в поле длины сжатая полезная нагрузка
+     * @param field значение поля длины из заголовка
+     * @return true, если полезная нагрузка сжата
+     */
+    public static boolean isCompressed(int field) {
+        return (field & COMPRESSED_FLAG) != 0;
+    }
+
+    /**
+     * Проверяет, отмечена ли в поле длины часть файла
+     * @param field значение поля длины из заголовка
+     * @return true, если полезная нагрузка является частью файла
+     */
+    public static boolean isRaw(int field) {
+        return (field & RAW_FLAG) != 0;
+    }
+
+    /**
+     * Проверяет длину кадра, прочитанную из заголовка
+     * @param length длина полезной нагрузки
+     * @throws IOException если длина отрицательна или превышает допустимую
+     */
+    public static void checkLength(int length) throws IOException {
+        checkLength(length, MAX_FRAME_SIZE);
+    }
+
+    /**
+     * Проверяет длину кадра, прочитанную из заголовка, по согласованному наибольшему размеру
+     * @param length длина полезной нагрузки
+     * @param maxLength наибольшая допустимая длина
+     * @throws IOException если длина отрицательна или превышает допустимую
+     */
+    public static void checkLength(int length, int maxLength) throws IOException {
+        if (length < 0 || length > Math.min(maxLength, MAX_FRAME_SIZE)) {
+            throw new IOException("Некорректная длина кадра: " + length);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package protocol;
+
+import java.io.*;
+
+/**
+ * Кадр рукопожатия, которым клиент и сервер обмениваются сразу после подключения
+ * Клиент перечисляет поддерживаемые способы кодирования в порядке предпочтения,
+ * сервер отвечает тем же кадром с единственным выбранным способом
+ * Кроме способов кодирования стороны обмениваются битовой маской дополнительных возможностей:
+ * клиент перечисляет поддерживаемые, сервер отвечает теми, которые будут использоваться
+ * Со второй версии протокола стороны также сообщают наибольший принимаемый размер кадра и хеш таблицы команд,
+ * по которому клиент замечает, что после переподключения набор команд сервера изменился.
+ * Сервер отвечает версией не выше версии клиента, поэтому клиенты первой версии продолжают работать
+ * Если сервер не может принять клиента, он отвечает кадром первой версии без способов кодирования с причиной отказа
+ */
+public class Handshake {
+    /** Признак кадра рукопожатия, отличающий его от обычного запроса */
+    public static final int MAGIC = 0x544B5453;
+    /** Текущая версия протокола */
+    public static final byte PROTOCOL_VERSION = 2;
+    /** Наименьшая поддерживаемая версия протокола */
+    public static final byte MIN_PROTOCOL_VERSION = 1;
+    /** Возможность сжатия полезной нагрузки кадров */
+    public static final byte FEATURE_COMPRESSION = 1;
+    /** Возможность получать части файлов кадрами без способа кодирования, со второй версии */
+    public static final byte FEATURE_FILE_TRANSFER = 1 << 1;
+
+    private final byte protocolVersion;
+    private final byte[] codecs;
+    /** Битовая маска дополнительных возможностей */
+    private final byte features;
+    /** Наибольший размер кадра, который принимает отправитель рукопожатия */
+    private final int maxFrameSize;
+    /** Хеш таблицы команд сервера; в рукопожатии клиента не используется */
+    private final int commandHash;
+    /** Причина отказа в подключении, null если подключение принято */
+    private final String rejectReason;
+
+    /**
+     * Создает рукопожатие текущей версии протокола
+     * @param codecs идентификаторы способов кодирования в порядке предпочтения
+     */
+    public Handshake(byte... codecs) {
+        this(PROTOCOL_VERSION, codecs, (byte) 0, Frames.MAX_FRAME_SIZE, 0, null);
+    }
+
+    private Handshake(byte protocolVersion, byte[] codecs, byte features, int maxFrameSize, int commandHash,
+                      String rejectReason) {
+        this.protocolVersion = protocolVersion;
+        this.codecs = codecs;
+        this.features = features;
+        this.maxFrameSize = maxFrameSize;
+        this.commandHash = commandHash;
+        this.rejectReason = rejectReason;
+    }
+
+    /**
+     * Создает копию рукопожатия с указанными дополнительными возможностями
+     * @param features битовая маска возможностей
+     * @return рукопожатие с возможностями
+     */
+    public Handshake withFeatures(byte features) {
+        return new Handshake(protocolVersion, codecs, features, maxFrameSize, commandHash, rejectReason);
+    }
+
+    /**
+     * Создает копию рукопожатия с указанной версией протокола
+     * Сервер отвечает клиенту старой версии рукопожатием той же версии
+     * @param protocolVersion версия протокола
+     * @return рукопожатие указанной версии
+     */
+    public Handshake withVersion(byte protocolVersion) {
+        return new Handshake(protocolVersion, codecs, features, maxFrameSize, commandHash, rejectReason);
+    }
+
+    /**
+     * Создает копию рукопожатия с указанными ограничениями соединения
+     * @param maxFrameSize наибольший размер кадра, который принимает отправитель
+     * @param commandHash хеш таблицы команд сервера
+     * @return рукопожатие с ограничениями
+     */
+    public Handshake withLimits(int maxFrameSize, int commandHash) {
+        return new Handshake(protocolVersion, codecs, features, maxFrameSize, commandHash, rejectReason);
+    }
+
+    /**
+     * Создает ответ сервера, отказывающий клиенту в подключении
+     * Отказ отправляется до разбора рукопожатия клиента, поэтому имеет первую версию, понятную всем клиентам
+     * @param reason причина отказа
+     * @return рукопожатие с отказом
+     */
+    public static Handshake rejection(String reason) {
+        return new Handshake(MIN_PROTOCOL_VERSION, new byte[0], (byte) 0, Frames.MAX_FRAME_SIZE, 0, reason);
+    }
+
+    public byte getProtocolVersion() { return protocolVersion; }
+
+    public int getMaxFrameSize() { return maxFrameSize; }
+
+    public int getCommandHash() { return commandHash; }
+
+    public byte[] getCodecs() { return codecs; }
+
+    public byte getFeatures() { return features; }
+
+    /**
+     * Проверяет наличие дополнительной возможности
+     * @param feature бит возможности
+     * @return true, если возможность указана
+     */
+    public boolean hasFeature(byte feature) {
+        return (features & feature) != 0;
+    }
+
+    public String getRejectReason() { return rejectReason; }
+
+    public boolean isRejected() { return rejectReason != null; }
+
+    /**
+     * Выбирает первый из предложенных способов кодирования, известный этой стороне
+     * @return выбранный способ или null, если общих способов нет
+     */
+    public WireCodec selectCodec() {
+        for (byte id : codecs) {
+            WireCodec codec = WireCodec.forId(id);
+            if (codec != null) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Кодирует рукопожатие в полезную нагрузку кадра
+     * @return полезная нагрузка кадра
+     * @throws IOException если возникла ошибка при записи
+     */
+    public byte[] toBytes() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(protocolVersion);
+        out.writeByte(codecs.length);
+        out.write(codecs);
+        out.writeByte(features);
+        if (protocolVersion >= 2) {
+            out.writeInt(maxFrameSize);
+            out.writeInt(commandHash);
+        }
+        if (rejectReason != null) {
+            out.writeUTF(rejectReason);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Восстанавливает рукопожатие из полезной нагрузки кадра
+     * @param payload полезная нагрузка кадра
+     * @return рукопожатие
+     * @throws IOException если кадр не является рукопожатием
+     */
+    public static Handshake fromBytes(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        if (payload.length < 6 || in.readInt() != MAGIC) {
+            throw new IOException("Ожидалось рукопожатие протокола");
+        }
+        byte protocolVersion = in.readByte();
+        byte[] codecs = new byte[in.readUnsignedByte()];
+        in.readFully(codecs);
+        byte features = in.available() > 0 ? in.readByte() : 0;
+        int maxFrameSize = Frames.MAX_FRAME_SIZE;
+        int commandHash = 0;
+        if (protocolVersion >= 2) {
+            maxFrameSize = in.readInt();
+            commandHash = in.readInt();
+            if (maxFrameSize <= 0) {
+                throw new IOException("Некорректный максимальный размер кадра: " + maxFrameSize);
+            }
+        }
+        String rejectReason = in.available() > 0 ? in.readUTF() : null;
+        return new Handshake(protocolVersion, codecs, features, maxFrameSize, commandHash, rejectReason);
+    }
+}
@@ -0,0 +1,218 @@
+package protocol;
+
+import mainClasses.*;
+import things.Request;
+import things.Response;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * Первая версия двоичного кодирования запросов и ответов: длины и числа записываются фиксированной длиной
+ * Сохраняется для клиентов, которые при рукопожатии предлагают только ее; новые клиенты используют {@link BinaryCodec}
+ */
+public class LegacyBinaryCodec implements WireCodec {
+    public static final LegacyBinaryCodec INSTANCE = new LegacyBinaryCodec();
+    /** Текущая версия формата */
+    public static final byte FORMAT_VERSION = 1;
+
+    @Override
+    public byte getId() {
+        return BINARY;
+    }
+
+    @Override
+    public byte[] encodeRequest(Request request) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(FORMAT_VERSION);
+        writeEnum(out, request.getType());
+        writeString(out, request.getCommandName());
+        writeStrings(out, request.getArgs());
+        writeString(out, request.getScriptContent());
+        writeTicket(out, request.getWorker());
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Request decodeRequest(byte[] payload) throws IOException {
+        DataInputStream in = open(payload);
+        Request.RequestType type = readEnum(in, Request.RequestType.values());
+        String commandName = readString(in);
+        String[] args = readStrings(in);
+        String scriptContent = readString(in);
+        Ticket ticket = readTicket(in);
+        return new Request(type, commandName, args, scriptContent, ticket);
+    }
+
+    @Override
+    public byte[] encodeResponse(Response response) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(FORMAT_VERSION);
+        writeEnum(out, response.getType());
+        out.writeBoolean(response.isSuccess());
+        writeString(out, response.getMessage());
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Response decodeResponse(byte[] payload) throws IOException {
+        DataInputStream in = open(payload);
+        Response response = new Response();
+        response.setType(readEnum(in, Response.ResponseType.values()));
+        response.setSuccess(in.readBoolean());
+        response.setMessage(readString(in));
+        return response;
+    }
+
+    /**
+     * Открывает полезную нагрузку для чтения и проверяет версию формата
+     */
+    private static DataInputStream open(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Неподдерживаемая версия формата: " + version);
+        }
+        return in;
+    }
+
+    private static void writeTicket(DataOutputStream out, Ticket ticket) throws IOException {
+        out.writeBoolean(ticket != null);
+        if (ticket == null) return;
+        writeInteger(out, ticket.getId());
+        writeString(out, ticket.getName());
+        Coordinates coordinates = ticket.getCoordinates();
+        out.writeBoolean(coordinates != null);
+        if (coordinates != null) {
+            out.writeBoolean(coordinates.getX() != null);
+            if (coordinates.getX() != null) {
+                out.writeDouble(coordinates.getX());
+            }
+            out.writeFloat(coordinates.getY());
+        }
+        ZonedDateTime creationDate = ticket.getCreationDate();
+        out.writeBoolean(creationDate != null);
+        if (creationDate != null) {
+            out.writeLong(creationDate.toEpochSecond());
+            out.writeInt(creationDate.getNano());
+            writeString(out, creationDate.getZone().getId());
+        }
+        out.writeInt(ticket.getPrice());
+        out.writeByte(ticket.getRefundable() == null ? -1 : ticket.getRefundable() ? 1 : 0);
+        writeEnum(out, ticket.getTicketType());
+        Venue venue = ticket.getVenue();
+        out.writeBoolean(venue != null);
+        if (venue != null) {
+            writeInteger(out, venue.getId());
+            writeString(out, venue.getName());
+            out.writeLong(venue.getCapacity());
+            writeEnum(out, venue.getVenueType());
+        }
+    }
+
+    private static Ticket readTicket(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) return null;
+        Integer id = readInteger(in);
+        String name = readString(in);
+        Coordinates coordinates = null;
+        if (in.readBoolean()) {
+            Double x = in.readBoolean() ? in.readDouble() : null;
+            coordinates = new Coordinates(x, in.readFloat());
+        }
+        ZonedDateTime creationDate = null;
+        if (in.readBoolean()) {
+            Instant instant = Instant.ofEpochSecond(in.readLong(), in.readInt());
+            creationDate = ZonedDateTime.ofInstant(instant, ZoneId.of(readString(in)));
+        }
+        int price = in.readInt();
+        byte refundableFlag = in.readByte();
+        Boolean refundable = refundableFlag < 0 ? null : refundableFlag == 1;
+        TicketType ticketType = readEnum(in, TicketType.values());
+        Venue venue = null;
+        if (in.readBoolean()) {
+            venue = new Venue(readInteger(in), readString(in), in.readLong(), readEnum(in, VenueType.values()));
+        }
+        return new Ticket(id, name, coordinates, creationDate, price, refundable, ticketType, venue);
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInteger(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    private static void writeEnum(DataOutputStream out, Enum<?> value) throws IOException {
+        out.writeByte(value == null ? -1 : value.ordinal());
+    }
+
+    private static <E extends Enum<E>> E readEnum(DataInputStream in, E[] values) throws IOException {
+        int ordinal = in.readByte();
+        if (ordinal < 0) return null;
+        if (ordinal >= values.length) {
+            throw new IOException("Некорректное значение перечисления: " + ordinal);
+        }
+        return values[ordinal];
+    }
+
+    /**
+     * Записывает строку длиной в байтах UTF-8 и самими байтами, длина -1 означает null
+     * В отличие от writeUTF не ограничивает длину строки 64 КБ
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        Frames.checkLength(length);
+        if (length > in.available()) {
+            throw new IOException("Длина строки " + length + " больше оставшихся данных");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.length);
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        Frames.checkLength(length);
+        // Каждая строка занимает хотя бы один байт, поэтому поврежденное количество не приводит к выделению памяти
+        if (length > in.available()) {
+            throw new IOException("Количество строк " + length + " больше оставшихся данных");
+        }
+        String[] values = new String[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = readString(in);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,39 @@
+package protocol;
+
+import things.Request;
+import things.Response;
+
+import java.io.IOException;
+
+/**
+ * Кодирование стандартной сериализацией Java
+ * Используется, если одна из сторон не поддерживает двоичное кодирование
+ */
+public class SerializationCodec implements WireCodec {
+    public static final SerializationCodec INSTANCE = new SerializationCodec();
+
+    @Override
+    public byte getId() {
+        return SERIALIZATION;
+    }
+
+    @Override
+    public byte[] encodeRequest(Request request) throws IOException {
+        return Frames.serialize(request);
+    }
+
+    @Override
+    public Request decodeRequest(byte[] payload) throws IOException {
+        return (Request) Frames.deserialize(payload);
+    }
+
+    @Override
+    public byte[] encodeResponse(Response response) throws IOException {
+        return Frames.serialize(response);
+    }
+
+    @Override
+    public Response decodeResponse(byte[] payload) throws IOException {
+        return (Response) Frames.deserialize(payload);
+    }
+}
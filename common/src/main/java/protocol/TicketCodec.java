@@ -0,0 +1,293 @@
+package protocol;
+
+import mainClasses.*;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+
+/**
+ * Компактное двоичное представление билета, общее для сетевого обмена и файлов снимков
+ * Целые числа пишутся переменной длиной (7 бит в байте), поэтому небольшие идентификаторы и цены занимают
+ * один-два байта; отсутствующие поля отмечаются битами в одном байте признаков, перечисления - порядковыми номерами,
+ * дата - секундами эпохи, наносекундами и часовым поясом
+ */
+public final class TicketCodec {
+    private static final int HAS_ID = 1;
+    private static final int HAS_NAME = 1 << 1;
+    private static final int HAS_COORDINATES = 1 << 2;
+    private static final int HAS_X = 1 << 3;
+    private static final int HAS_CREATION_DATE = 1 << 4;
+    private static final int HAS_REFUNDABLE = 1 << 5;
+    private static final int REFUNDABLE = 1 << 6;
+    private static final int HAS_VENUE = 1 << 7;
+
+    /** Часовой пояс записан смещением от UTC в секундах */
+    private static final byte ZONE_OFFSET = 0;
+    /** Часовой пояс записан идентификатором региона */
+    private static final byte ZONE_REGION = 1;
+
+    private TicketCodec() {}
+
+    /**
+     * Записывает билет; null записывается одним байтом
+     * @param out поток для записи
+     * @param ticket билет или null
+     * @throws IOException если возникла ошибка при записи
+     */
+    public static void writeTicket(DataOutput out, Ticket ticket) throws IOException {
+        if (ticket == null) {
+            out.writeBoolean(false);
+            return;
+        }
+        out.writeBoolean(true);
+        Coordinates coordinates = ticket.getCoordinates();
+        ZonedDateTime creationDate = ticket.getCreationDate();
+        Boolean refundable = ticket.getRefundable();
+        Venue venue = ticket.getVenue();
+        int flags = (ticket.getId() != null ? HAS_ID : 0)
+                | (ticket.getName() != null ? HAS_NAME : 0)
+                | (coordinates != null ? HAS_COORDINATES : 0)
+                | (coordinates != null && coordinates.getX() != null ? HAS_X : 0)
+                | (creationDate != null ? HAS_CREATION_DATE : 0)
+                | (refundable != null ? HAS_REFUNDABLE : 0)
+                | (Boolean.TRUE.equals(refundable) ? REFUNDABLE : 0)
+                | (venue != null ? HAS_VENUE : 0);
+        out.writeByte(flags);
+        if (ticket.getId() != null) {
+            writeVarInt(out, ticket.getId());
+        }
+        if (ticket.getName() != null) {
+            writeUtf8(out, ticket.getName());
+        }
+        if (coordinates != null) {
+            if (coordinates.getX() != null) {
+                out.writeDouble(coordinates.getX());
+            }
+            out.writeFloat(coordinates.getY());
+        }
+        if (creationDate != null) {
+            writeDate(out, creationDate);
+        }
+        writeVarInt(out, zigZag(ticket.getPrice()));
+        writeEnum(out, ticket.getTicketType());
+        if (venue != null) {
+            out.writeByte((venue.getId() != null ? HAS_ID : 0) | (venue.getName() != null ? HAS_NAME : 0));
+            if (venue.getId() != null) {
+                writeVarInt(out, venue.getId());
+            }
+            if (venue.getName() != null) {
+                writeUtf8(out, venue.getName());
+            }
+            writeVarLong(out, zigZag(venue.getCapacity()));
+            writeEnum(out, venue.getVenueType());
+        }
+    }
+
+    /**
+     * Читает билет, записанный {@link #writeTicket(DataOutput, Ticket)}
+     * @param in поток для чтения
+     * @return билет или null
+     * @throws IOException если данные повреждены или закончились
+     */
+    public static Ticket readTicket(DataInput in) throws IOException {
+        if (!in.readBoolean()) return null;
+        int flags = in.readUnsignedByte();
+        Integer id = (flags & HAS_ID) != 0 ? readVarInt(in) : null;
+        String name = (flags & HAS_NAME) != 0 ? readUtf8(in) : null;
+        Coordinates coordinates = null;
+        if ((flags & HAS_COORDINATES) != 0) {
+            Double x = (flags & HAS_X) != 0 ? in.readDouble() : null;
+            coordinates = new Coordinates(x, in.readFloat());
+        }
+        ZonedDateTime creationDate = (flags & HAS_CREATION_DATE) != 0 ? readDate(in) : null;
+        int price = unZigZag(readVarInt(in));
+        Boolean refundable = (flags & HAS_REFUNDABLE) != 0 ? (flags & REFUNDABLE) != 0 : null;
+        TicketType ticketType = readEnum(in, TicketType.values());
+        Venue venue = null;
+        if ((flags & HAS_VENUE) != 0) {
+            int venueFlags = in.readUnsignedByte();
+            Integer venueId = (venueFlags & HAS_ID) != 0 ? readVarInt(in) : null;
+            String venueName = (venueFlags & HAS_NAME) != 0 ? readUtf8(in) : null;
+            long capacity = unZigZag(readVarLong(in));
+            venue = new Venue(venueId, venueName, capacity, readEnum(in, VenueType.values()));
+        }
+        return new Ticket(id, name, coordinates, creationDate, price, refundable, ticketType, venue);
+    }
+
+    /**
+     * Записывает строку длиной переменной длины и байтами UTF-8; длина 0 означает null, иначе хранится длина + 1
+     * @param out поток для записи
+     * @param value строка или null
+     * @throws IOException если возникла ошибка при записи
+     */
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeByte(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    /**
+     * Читает строку, записанную {@link #writeString(DataOutput, String)}
+     * @param in поток для чтения
+     * @return строка или null
+     * @throws IOException если данные повреждены или закончились
+     */
+    public static String readString(DataInput in) throws IOException {
+        int length = readVarInt(in);
+        if (length == 0) return null;
+        return readBytes(in, length - 1);
+    }
+
+    /**
+     * Записывает целое число без знака переменной длиной: по 7 бит в байте, старший бит означает продолжение
+     * Отрицательные числа занимают 5 байт, поэтому числа со знаком перед записью переводятся зигзаг-кодированием
+     * @param out поток для записи
+     * @param value число
+     * @throws IOException если возникла ошибка при записи
+     */
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Читает целое число, записанное {@link #writeVarInt(DataOutput, int)}
+     * @param in поток для чтения
+     * @return число
+     * @throws IOException если запись числа длиннее 5 байт или данные закончились
+     */
+    public static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Некорректная запись целого числа");
+    }
+
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Некорректная запись целого числа");
+    }
+
+    /**
+     * Переводит число со знаком в число без знака так, что малые по модулю значения остаются малыми
+     */
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeDate(DataOutput out, ZonedDateTime date) throws IOException {
+        writeVarLong(out, zigZag(date.toEpochSecond()));
+        writeVarInt(out, date.getNano());
+        ZoneId zone = date.getZone();
+        if (zone instanceof ZoneOffset) {
+            out.writeByte(ZONE_OFFSET);
+            writeVarInt(out, zigZag(((ZoneOffset) zone).getTotalSeconds()));
+        } else {
+            out.writeByte(ZONE_REGION);
+            writeUtf8(out, zone.getId());
+        }
+    }
+
+    private static ZonedDateTime readDate(DataInput in) throws IOException {
+        long seconds = unZigZag(readVarLong(in));
+        int nanos = readVarInt(in);
+        ZoneId zone;
+        try {
+            Instant instant = Instant.ofEpochSecond(seconds, nanos);
+            byte kind = in.readByte();
+            if (kind == ZONE_OFFSET) {
+                zone = ZoneOffset.ofTotalSeconds(unZigZag(readVarInt(in)));
+            } else if (kind == ZONE_REGION) {
+                zone = ZoneId.of(readUtf8(in));
+            } else {
+                throw new IOException("Некорректный часовой пояс: " + kind);
+            }
+            return ZonedDateTime.ofInstant(instant, zone);
+        } catch (DateTimeException | ArithmeticException e) {
+            throw new IOException("Некорректная дата: " + e.getMessage(), e);
+        }
+    }
+
+    private static void writeEnum(DataOutput out, Enum<?> value) throws IOException {
+        out.writeByte(value == null ? 0 : value.ordinal() + 1);
+    }
+
+    private static <E extends Enum<E>> E readEnum(DataInput in, E[] values) throws IOException {
+        int ordinal = in.readUnsignedByte() - 1;
+        if (ordinal < 0) return null;
+        if (ordinal >= values.length) {
+            throw new IOException("Некорректное значение перечисления: " + ordinal);
+        }
+        return values[ordinal];
+    }
+
+    private static void writeUtf8(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readUtf8(DataInput in) throws IOException {
+        return readBytes(in, readVarInt(in));
+    }
+
+    private static String readBytes(DataInput in, int length) throws IOException {
+        Frames.checkLength(length);
+        // Буфер растет по мере чтения, поэтому поврежденная длина не выделяет памяти намного больше самих данных
+        byte[] bytes = new byte[Math.min(length, 8192)];
+        in.readFully(bytes);
+        while (bytes.length < length) {
+            int read = bytes.length;
+            bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * read));
+            in.readFully(bytes, read, bytes.length - read);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
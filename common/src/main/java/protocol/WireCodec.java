@@ -0,0 +1,51 @@
+package protocol;
+
+import things.Request;
+import things.Response;
+
+import java.io.IOException;
+
+/**
+ * Способ кодирования запросов и ответов в полезную нагрузку кадра
+ * Конкретный способ согласуется клиентом и сервером при подключении
+ */
+public interface WireCodec {
+    /** Идентификатор кодирования средствами стандартной сериализации Java */
+    byte SERIALIZATION = 0;
+    /** Идентификатор первой версии двоичного кодирования */
+    byte BINARY = 1;
+    /** Идентификатор двоичного кодирования с числами переменной длины */
+    byte BINARY_V2 = 2;
+
+    /**
+     * Возвращает идентификатор кодирования, передаваемый при рукопожатии
+     * @return идентификатор кодирования
+     */
+    byte getId();
+
+    byte[] encodeRequest(Request request) throws IOException;
+
+    Request decodeRequest(byte[] payload) throws IOException;
+
+    byte[] encodeResponse(Response response) throws IOException;
+
+    Response decodeResponse(byte[] payload) throws IOException;
+
+    /**
+     * Находит реализацию кодирования по ее идентификатору
+     * @param id идентификатор кодирования
+     * @return реализация кодирования или null, если она неизвестна
+     */
+    static WireCodec forId(byte id) {
+        switch (id) {
+            case SERIALIZATION:
+                return SerializationCodec.INSTANCE;
+            case BINARY:
+                return LegacyBinaryCodec.INSTANCE;
+            case BINARY_V2:
+                return BinaryCodec.INSTANCE;
+            default:
+                return null;
+        }
+    }
+}
@@ -15,7 +15,9 @@ public class Request implements Serializable {
      * Перечисление типов запросов
      */
     public enum RequestType {
-        SCRIPT_TRANSFER, INITIAL_COMMAND, TICKET_DATA, HUGE_CONTENT;
+        SCRIPT_TRANSFER, INITIAL_COMMAND, TICKET_DATA, HUGE_CONTENT,
+        /** Проверка связи, на которую сервер сразу отвечает, не выполняя команд */
+        HEARTBEAT;
     }
 
     private RequestType type; // Тип запроса
@@ -23,6 +25,7 @@ public class Request implements Serializable {
     private String[] args; // Аргументы команды
     private String scriptContent; // Содержимое скрипта
     private Ticket ticket; // Данные работника
+    private transient long requestId; // Идентификатор запроса, передается в заголовке кадра
 
     /**
      * Конструктор для создания запроса с начальной командой
@@ -74,13 +77,29 @@ public class Request implements Serializable {
         this.type = type;
     }
 
+    /**
+     * Конструктор со всеми полями запроса, используется при декодировании
+     * @param type тип запроса
+     * @param commandName имя команды
+     * @param args аргументы команды
+     * @param scriptContent содержимое скрипта
+     * @param ticket данные о билете
+     */
+    public Request(RequestType type, String commandName, String[] args, String scriptContent, Ticket ticket) {
+        this.type = type;
+        this.commandName = commandName;
+        this.args = args;
+        this.scriptContent = scriptContent;
+        this.ticket = ticket;
+    }
+
     /**
      * Преобразует объект в строковое представление
      * @return строковое представление запроса
      */
     @Override
     public String toString() {
-        return "(type = " + type + ", commandName = " + commandName
+        return "(id = " + requestId + ", type = " + type + ", commandName = " + commandName
                 + ", arguments = " + Arrays.toString(args) + ", worker = " + ticket + ")";
     }
 
@@ -108,6 +127,19 @@ public class Request implements Serializable {
      */
     public String[] getArgs() { return args; }
 
+    /**
+     * Получает идентификатор запроса, по которому клиент сопоставляет ответ с запросом
+     * @return идентификатор запроса
+     */
+    public long getRequestId() { return requestId; }
+
+    /**
+     * Устанавливает идентификатор запроса
+     * Данные о билете для команды отправляются с идентификатором исходной команды
+     * @param requestId идентификатор запроса
+     */
+    public void setRequestId(long requestId) { this.requestId = requestId; }
+
     /**
      * Получает данные работника
      * @return объект работника
@@ -9,7 +9,15 @@ import java.io.Serializable;
 public class Response implements Serializable {
 
     public enum ResponseType{
-        INFO, NEED_TICKET, ERROR, ONE_MORE_SCRIPT;
+        INFO, NEED_TICKET, ERROR, ONE_MORE_SCRIPT,
+        /** Очередная часть большого результата */
+        CHUNK,
+        /** Признак окончания большого результата, переданного частями */
+        END_OF_CONTENT,
+        /** Ответ на проверку связи */
+        HEARTBEAT,
+        /** Отказ из-за превышения предела частоты запросов; запрос стоит повторить позже */
+        RATE_LIMITED;
     }
 
     /** Тип ответа */
@@ -18,6 +26,8 @@ public class Response implements Serializable {
     public String message;
     /** Флаг успешности операции */
     public boolean success;
+    /** Идентификатор запроса, на который дан ответ; передается в заголовке кадра */
+    private transient long requestId;
 
     /**
      * Конструктор без параметров
@@ -74,6 +84,18 @@ public class Response implements Serializable {
      */
     public boolean isSuccess() { return success; }
 
+    /**
+     * Получает идентификатор запроса, на который дан ответ
+     * @return идентификатор запроса
+     */
+    public long getRequestId() { return requestId; }
+
+    /**
+     * Устанавливает идентификатор запроса, на который дан ответ
+     * @param requestId идентификатор запроса
+     */
+    public void setRequestId(long requestId) { this.requestId = requestId; }
+
     /**
      * Устанавливает тип ответа
      * @param type тип ответа
@@ -100,6 +122,6 @@ public class Response implements Serializable {
     @Override
     public String toString() {
         String newMessage = (message != null && message.length() > 30) ? message.substring(0, 30) + "..." : message;
-        return "(type = " + type + ", success = " + success + ", message = " + newMessage + ")";
+        return "(id = " + requestId + ", type = " + type + ", success = " + success + ", message = " + newMessage + ")";
     }
 }
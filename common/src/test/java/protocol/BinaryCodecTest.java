@@ -0,0 +1,125 @@
+package protocol;
+
+import junit.framework.TestCase;
+import things.Request;
+import things.Response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+
+/**
+ * Проверяет обе версии двоичного кодирования и их выбор по идентификатору из рукопожатия
+ */
+public class BinaryCodecTest extends TestCase {
+    private static final WireCodec[] CODECS = {BinaryCodec.INSTANCE, LegacyBinaryCodec.INSTANCE};
+
+    public void testRequestRoundTrip() throws IOException {
+        Request request = new Request(Request.RequestType.TICKET_DATA, "update", new String[]{"17", "", "аргумент"},
+                "show\nhelp\n", TicketCodecTest.ticket(17, ZonedDateTime.of(2024, 1, 16, 12, 0, 0, 0, ZoneId.of("UTC"))));
+        for (WireCodec codec : CODECS) {
+            Request restored = codec.decodeRequest(codec.encodeRequest(request));
+            assertEquals(request.getType(), restored.getType());
+            assertEquals(request.getCommandName(), restored.getCommandName());
+            assertTrue(Arrays.equals(request.getArgs(), restored.getArgs()));
+            assertEquals(request.getScriptContent(), restored.getScriptContent());
+            TicketCodecTest.assertSameTicket(request.getWorker(), restored.getWorker());
+        }
+    }
+
+    public void testRequestWithoutOptionalParts() throws IOException {
+        Request request = new Request(null, null, null, null, null);
+        for (WireCodec codec : CODECS) {
+            Request restored = codec.decodeRequest(codec.encodeRequest(request));
+            assertNull(restored.getType());
+            assertNull(restored.getCommandName());
+            assertNull(restored.getArgs());
+            assertNull(restored.getScriptContent());
+            assertNull(restored.getWorker());
+        }
+    }
+
+    public void testResponseRoundTrip() throws IOException {
+        Response[] responses = {
+                new Response(Response.ResponseType.CHUNK, true, "часть результата ".repeat(5000)),
+                new Response(Response.ResponseType.ERROR, false, null),
+                new Response(null, true, "")
+        };
+        for (WireCodec codec : CODECS) {
+            for (Response response : responses) {
+                Response restored = codec.decodeResponse(codec.encodeResponse(response));
+                assertEquals(response.getType(), restored.getType());
+                assertEquals(response.isSuccess(), restored.isSuccess());
+                assertEquals(response.getMessage(), restored.getMessage());
+            }
+        }
+    }
+
+    public void testCodecIds() {
+        assertSame(LegacyBinaryCodec.INSTANCE, WireCodec.forId(WireCodec.BINARY));
+        assertSame(BinaryCodec.INSTANCE, WireCodec.forId(WireCodec.BINARY_V2));
+        assertSame(SerializationCodec.INSTANCE, WireCodec.forId(WireCodec.SERIALIZATION));
+        assertNull(WireCodec.forId((byte) 99));
+        // Клиент первой версии предлагает только идентификатор 1 и должен получить формат, который понимает
+        assertSame(LegacyBinaryCodec.INSTANCE, new Handshake(WireCodec.BINARY).selectCodec());
+    }
+
+    public void testFormatsAreNotMixed() throws IOException {
+        Request request = new Request("info", new String[0]);
+        try {
+            BinaryCodec.INSTANCE.decodeRequest(LegacyBinaryCodec.INSTANCE.encodeRequest(request));
+            fail("Запрос первой версии принят кодированием второй");
+        } catch (IOException expected) {
+            // версия формата записана в первом байте
+        }
+        try {
+            LegacyBinaryCodec.INSTANCE.decodeRequest(BinaryCodec.INSTANCE.encodeRequest(request));
+            fail("Запрос второй версии принят кодированием первой");
+        } catch (IOException expected) {
+            // версия формата записана в первом байте
+        }
+    }
+
+    private static void assertRejected(WireCodec codec, byte[] payload) {
+        try {
+            codec.decodeRequest(payload);
+            fail("Запрос с длиной больше самих данных принят");
+        } catch (IOException expected) {
+            // длина проверяется до выделения памяти
+        }
+    }
+
+    public void testLengthsLargerThanPayloadAreRejected() throws IOException {
+        int huge = Frames.MAX_FRAME_SIZE;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(BinaryCodec.FORMAT_VERSION);
+        out.writeByte(-1);
+        out.writeByte(0);
+        TicketCodec.writeVarInt(out, huge + 1);
+        assertRejected(BinaryCodec.INSTANCE, bytes.toByteArray());
+
+        bytes.reset();
+        out.writeByte(LegacyBinaryCodec.FORMAT_VERSION);
+        out.writeByte(-1);
+        out.writeInt(-1);
+        out.writeInt(huge);
+        assertRejected(LegacyBinaryCodec.INSTANCE, bytes.toByteArray());
+
+        bytes.reset();
+        out.writeByte(LegacyBinaryCodec.FORMAT_VERSION);
+        out.writeByte(-1);
+        out.writeInt(huge);
+        assertRejected(LegacyBinaryCodec.INSTANCE, bytes.toByteArray());
+
+        bytes.reset();
+        out.writeByte(BinaryCodec.FORMAT_VERSION);
+        out.writeByte(-1);
+        TicketCodec.writeVarInt(out, huge + 1);
+        assertRejected(BinaryCodec.INSTANCE, bytes.toByteArray());
+    }
+}
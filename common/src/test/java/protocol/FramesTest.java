@@ -0,0 +1,115 @@
+package protocol;
+
+import junit.framework.TestCase;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Проверяет запись и чтение кадров, признаки в поле длины и ограничения размера, в том числе после распаковки
+ */
+public class FramesTest extends TestCase {
+
+    private static DataInputStream input(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    public void testStreamRoundTrip() throws IOException {
+        byte[] first = "первый".getBytes(StandardCharsets.UTF_8);
+        byte[] packed = Compression.deflate("второй ".repeat(1000).getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        Frames.writeFrame(out, 1, first);
+        Frames.writeFrame(out, Long.MAX_VALUE, packed, true);
+        Frames.writeFrame(out, 0, new byte[0]);
+
+        DataInputStream in = input(bytes.toByteArray());
+        Frame frame = Frames.readFrame(in);
+        assertEquals(1, frame.getId());
+        assertFalse(frame.isCompressed());
+        assertFalse(frame.isRaw());
+        assertTrue(Arrays.equals(first, frame.getContent()));
+
+        frame = Frames.readFrame(in);
+        assertEquals(Long.MAX_VALUE, frame.getId());
+        assertTrue(frame.isCompressed());
+        assertTrue(Arrays.equals(packed, frame.getPayload()));
+        assertEquals("второй ".repeat(1000), new String(frame.getContent(), StandardCharsets.UTF_8));
+
+        frame = Frames.readFrame(in);
+        assertEquals(0, frame.getId());
+        assertEquals(0, frame.getPayload().length);
+        assertEquals(0, in.available());
+    }
+
+    public void testBufferMatchesStream() throws IOException {
+        byte[] payload = {1, 2, 3, 4, 5};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Frames.writeFrame(new DataOutputStream(bytes), 77, payload, true);
+        ByteBuffer buffer = Frames.toBuffer(77, payload, true);
+        byte[] fromBuffer = new byte[buffer.remaining()];
+        buffer.get(fromBuffer);
+        assertTrue(Arrays.equals(bytes.toByteArray(), fromBuffer));
+        assertEquals(Frames.HEADER_SIZE + payload.length, fromBuffer.length);
+    }
+
+    public void testRawHeader() throws IOException {
+        ByteBuffer header = Frames.rawHeader(9, 3);
+        byte[] frame = new byte[Frames.HEADER_SIZE + 3];
+        header.get(frame, 0, Frames.HEADER_SIZE);
+        frame[Frames.HEADER_SIZE] = 42;
+        Frame read = Frames.readFrame(input(frame));
+        assertEquals(9, read.getId());
+        assertTrue(read.isRaw());
+        assertFalse(read.isCompressed());
+        assertEquals(42, read.getPayload()[0]);
+    }
+
+    public void testNegotiatedLengthIsEnforced() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Frames.writeFrame(new DataOutputStream(bytes), 1, new byte[1025]);
+        try {
+            Frames.readFrame(input(bytes.toByteArray()), 1024);
+            fail("Кадр длиннее согласованного размера прочитан");
+        } catch (IOException expected) {
+            // длина проверяется до выделения памяти под полезную нагрузку
+        }
+        assertEquals(1025, Frames.readFrame(input(bytes.toByteArray()), 1025).getPayload().length);
+    }
+
+    public void testCorruptLengthIsRejected() {
+        byte[] header = ByteBuffer.allocate(Frames.HEADER_SIZE).putInt(Frames.MAX_FRAME_SIZE + 1).putLong(1).array();
+        try {
+            Frames.readFrame(input(header));
+            fail("Кадр длиннее наибольшего размера протокола прочитан");
+        } catch (IOException expected) {
+            // длина проверяется до выделения памяти под полезную нагрузку
+        }
+    }
+
+    public void testInflateIsBoundedByNegotiatedLength() throws IOException {
+        // Сотни килобайт нулей сжимаются в несколько сотен байт
+        byte[] packed = Compression.deflate(new byte[256 * 1024]);
+        assertTrue(packed.length < 4096);
+        Frame frame = new Frame(1, packed, true);
+        try {
+            frame.getContent(64 * 1024);
+            fail("Распакованный кадр превысил согласованный размер");
+        } catch (IOException expected) {
+            // распаковка прекращается, как только данные превышают предел
+        }
+        assertEquals(256 * 1024, frame.getContent(256 * 1024).length);
+    }
+
+    public void testCorruptCompressedPayloadIsRejected() {
+        byte[] packed = Compression.deflate("данные".repeat(100).getBytes(StandardCharsets.UTF_8));
+        try {
+            new Frame(1, Arrays.copyOf(packed, packed.length / 2), true).getContent();
+            fail("Обрезанные сжатые данные распакованы");
+        } catch (IOException expected) {
+            // поврежденные данные сообщаются только через IOException
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package protocol;
+
+import junit.framework.TestCase;
+import mainClasses.*;
+
+import java.io.*;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+/**
+ * Проверяет, что билеты, строки и числа переменной длины восстанавливаются без изменений
+ */
+public class TicketCodecTest extends TestCase {
+
+    static Ticket ticket(Integer id, ZonedDateTime creationDate) {
+        return new Ticket(id, "Концерт «Кино»", new Coordinates(-12.5, 400.25f), creationDate, 1500, true,
+                TicketType.VIP, new Venue(7, "Лужники", 81000L, VenueType.STADIUM));
+    }
+
+    static void assertSameTicket(Ticket expected, Ticket actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getName(), actual.getName());
+        if (expected.getCoordinates() == null) {
+            assertNull(actual.getCoordinates());
+        } else {
+            assertEquals(expected.getCoordinates().getX(), actual.getCoordinates().getX());
+            assertEquals(expected.getCoordinates().getY(), actual.getCoordinates().getY());
+        }
+        assertEquals(expected.getCreationDate(), actual.getCreationDate());
+        assertEquals(expected.getPrice(), actual.getPrice());
+        assertEquals(expected.getRefundable(), actual.getRefundable());
+        assertEquals(expected.getTicketType(), actual.getTicketType());
+        if (expected.getVenue() == null) {
+            assertNull(actual.getVenue());
+        } else {
+            assertEquals(expected.getVenue().getId(), actual.getVenue().getId());
+            assertEquals(expected.getVenue().getName(), actual.getVenue().getName());
+            assertEquals(expected.getVenue().getCapacity(), actual.getVenue().getCapacity());
+            assertEquals(expected.getVenue().getVenueType(), actual.getVenue().getVenueType());
+        }
+    }
+
+    private static Ticket roundTrip(Ticket ticket) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TicketCodec.writeTicket(new DataOutputStream(bytes), ticket);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Ticket restored = TicketCodec.readTicket(in);
+        assertEquals("запись прочитана не полностью", 0, in.available());
+        return restored;
+    }
+
+    public void testTicketWithRegionZone() throws IOException {
+        Ticket ticket = ticket(42, ZonedDateTime.of(2024, 3, 31, 2, 30, 0, 123456789, ZoneId.of("Europe/Moscow")));
+        assertSameTicket(ticket, roundTrip(ticket));
+    }
+
+    public void testTicketWithOffsetZone() throws IOException {
+        Ticket ticket = ticket(Integer.MAX_VALUE, ZonedDateTime.of(1970, 1, 1, 0, 0, 0, 0, ZoneOffset.ofHoursMinutes(-3, -30)));
+        assertSameTicket(ticket, roundTrip(ticket));
+    }
+
+    public void testTicketWithMissingFields() throws IOException {
+        Ticket ticket = new Ticket(null, null, new Coordinates(null, -1f), null, -5, null, null,
+                new Venue(null, null, -1L, null));
+        assertSameTicket(ticket, roundTrip(ticket));
+        Ticket empty = new Ticket(null, null, null, null, 0, false, null, null);
+        assertSameTicket(empty, roundTrip(empty));
+    }
+
+    public void testNullTicket() throws IOException {
+        assertNull(roundTrip(null));
+    }
+
+    public void testStrings() throws IOException {
+        String[] values = {null, "", "ascii", "кириллица и 😀", "x".repeat(70000)};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (String value : values) {
+            TicketCodec.writeString(out, value);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (String value : values) {
+            assertEquals(value, TicketCodec.readString(in));
+        }
+    }
+
+    public void testVarInts() throws IOException {
+        int[] ints = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+        long[] longs = {0L, 1L << 35, Long.MAX_VALUE, -1L, Long.MIN_VALUE};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int value : ints) {
+            TicketCodec.writeVarInt(out, value);
+        }
+        for (long value : longs) {
+            TicketCodec.writeVarLong(out, value);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int value : ints) {
+            assertEquals(value, TicketCodec.readVarInt(in));
+        }
+        for (long value : longs) {
+            assertEquals(value, TicketCodec.readVarLong(in));
+        }
+    }
+
+    public void testDateOutOfRangeIsRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeBoolean(true);
+        // Только признак наличия даты создания
+        out.writeByte(1 << 4);
+        TicketCodec.writeVarLong(out, -2);
+        TicketCodec.writeVarInt(out, 0);
+        try {
+            TicketCodec.readTicket(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            fail("Дата вне допустимого диапазона должна вызывать IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Некорректная дата"));
+        }
+    }
+
+    public void testTruncatedTicketIsRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TicketCodec.writeTicket(new DataOutputStream(bytes), ticket(1, ZonedDateTime.now()));
+        byte[] full = bytes.toByteArray();
+        for (int length = 1; length < full.length; length++) {
+            byte[] truncated = java.util.Arrays.copyOf(full, length);
+            try {
+                TicketCodec.readTicket(new DataInputStream(new ByteArrayInputStream(truncated)));
+                fail("Обрезанная запись длиной " + length + " прочитана");
+            } catch (IOException expected) {
+                // поврежденные данные сообщаются только через IOException
+            }
+        }
+    }
+}
@@ -14,19 +14,32 @@ public class ServerMain {
      * Инициализирует менеджеры коллекции и команд, регистрирует все доступные команды
      * и запускает TCP сервер
      *
-     * @param args аргументы командной строки, где args[0] - путь к файлу с коллекцией
+     * Путь к файлу с коллекцией задается переменной окружения COLLECTION_FILE,
+     * режим обработки подключений - переменной SERVER_MODE (threads, virtual или nio),
+     * адреса для прослушивания - переменной LISTEN_ADDRESSES (по умолчанию порт 5555 всех интерфейсов)
+     *
+     * @param args аргументы командной строки (не используются)
      */
     public static void main(String[] args) {
         String filePath = System.getenv("COLLECTION_FILE");
+        ServerConfig config;
+        try {
+            config = ServerConfig.fromEnvironment();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Некорректные настройки сервера: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
 
         CollectionManager collectionManager = new CollectionManager();
         CommandManager commandManager = new CommandManager();
-        TCPServer server = new TCPServer(collectionManager, commandManager);
+        TCPServer server = new TCPServer(collectionManager, commandManager, config);
         collectionManager.loadCollectionFromFile(filePath);
 
         commandManager.registerCommand(new HelpCommand(commandManager));
         commandManager.registerCommand(new InfoCommand());
         commandManager.registerCommand(new ShowCommand());
+        commandManager.registerCommand(new ShowDeltaCommand());
         commandManager.registerCommand(new AddCommand());
         commandManager.registerCommand(new UpdateCommand());
         commandManager.registerCommand(new RemoveByIdCommand());
@@ -40,9 +53,13 @@ public class ServerMain {
         commandManager.registerCommand(new SortCommand());
         commandManager.registerCommand(new ExitCommand());
         commandManager.registerCommand(new SaveCommand());
+        commandManager.registerCommand(new ExportCommand());
+
+        // При остановке процесса сигналом сервер также завершает начатые запросы и сохраняет коллекцию
+        Runtime.getRuntime().addShutdownHook(new Thread(server::drain, "shutdown"));
 
         try {
-            server.start(5555);
+            server.start();
         } catch (IOException e) {
             System.err.println("Не получилось запустить сервер: " + e.getMessage());
             System.exit(1);
@@ -17,6 +17,19 @@ public abstract class Command implements Executable, Serializable {
         WITH_TICKET_DATA, WITHOUT_TICKET_DATA, WITH_SCRIPT_FILE, WITH_TYPE_DATA;
     }
 
+    /**
+     * Очередь выполнения команды на сервере
+     * Дешевые чтения не ждут за тяжелыми, а изменения коллекции выполняются по одному
+     */
+    public enum Lane {
+        /** Чтение без обхода и сортировки всей коллекции */
+        CHEAP_READ,
+        /** Чтение с обходом или сортировкой всей коллекции */
+        HEAVY_READ,
+        /** Изменение коллекции */
+        MUTATION;
+    }
+
     private final String name;
     private final String description;
     public final CommandType commandType;
@@ -52,6 +65,33 @@ public abstract class Command implements Executable, Serializable {
 
     public CommandType getCommandType() { return commandType; }
 
+    /**
+     * Получает очередь, в которой выполняется команда
+     * По умолчанию команда считается изменяющей коллекцию
+     * @return очередь выполнения
+     */
+    public Lane getLane() { return Lane.MUTATION; }
+
+    /**
+     * Проверяет, что команда только читает коллекцию
+     * @return true, если команда не изменяет коллекцию
+     */
+    public boolean isReadOnly() { return getLane() != Lane.MUTATION; }
+
+    /**
+     * Проверяет, можно ли повторно отправлять готовый ответ команды, пока коллекция не изменилась
+     * По умолчанию так можно делать для всех команд чтения
+     * @return true, если ответ команды зависит только от аргументов и состояния коллекции
+     */
+    public boolean isCacheable() { return isReadOnly(); }
+
+    /**
+     * Проверяет, можно ли вместо выполнения команды отдать результат такой же уже выполняющейся команды
+     * По умолчанию так можно делать для всех команд чтения; команды с побочными действиями выполняются каждый раз
+     * @return true, если команда не имеет побочных действий, кроме формирования ответа
+     */
+    public boolean isCoalescable() { return isReadOnly(); }
+
     /**
      * Сравнивает текущий объект с другим объектом
      * @param o объект для сравнения
@@ -10,6 +10,11 @@ public class CountGreaterThanTypeCommand extends Command {
                 CommandType.WITHOUT_TICKET_DATA, true);
     }
 
+    @Override
+    public Lane getLane() {
+        return Lane.CHEAP_READ;
+    }
+
     /**
      * Выполняет команду с заданными аргументами
      *
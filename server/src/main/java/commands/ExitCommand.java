@@ -5,7 +5,9 @@ import managers.CollectionManager;
 
 /**
  * Команда 'exit'
- * Завершает программу
+ * Клиент завершается сам, не отправляя команду на сервер; сервер останавливается только командой exit
+ * администратора, которая сначала дожидается выполнения принятых запросов. Поэтому команда, пришедшая
+ * от клиента или из скрипта, сервер не останавливает
  */
 public class ExitCommand extends Command {
 
@@ -16,19 +18,23 @@ public class ExitCommand extends Command {
         super("exit", "завершить программу", CommandType.WITHOUT_TICKET_DATA, false);
     }
 
+    @Override
+    public Lane getLane() {
+        return Lane.CHEAP_READ;
+    }
+
     /**
      * Исполняет команду
      * @param args аргументы команды (не используются)
      * @param collectionManager менеджер коллекции (не используется)
+     * @return сообщение о том, что клиент не может остановить сервер
      */
     @Override
     public String  execute(String[] args, CollectionManager collectionManager) {
         if (args.length > 0) {
             return "Данная команда не принимает аргументов!";
-        } else {
-            System.exit(0);
         }
-        return "";
+        return "Команда exit завершает только клиент; сервер останавливает администратор";
     }
 
     @Override
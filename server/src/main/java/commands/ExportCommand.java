@@ -0,0 +1,57 @@
+package commands;
+
+import interfaces.FileTransferable;
+import mainClasses.Ticket;
+import managers.CollectionManager;
+
+import java.nio.file.Path;
+
+/**
+ * Команда 'export'
+ * Передает клиенту файл коллекции; если коллекция менялась после сохранения, она сначала сохраняется
+ */
+public class ExportCommand extends Command implements FileTransferable {
+
+    /**
+     * Создает команду export
+     */
+    public ExportCommand() {
+        super("export", "выгрузить файл коллекции в указанный файл на стороне клиента",
+                CommandType.WITHOUT_TICKET_DATA, false);
+    }
+
+    @Override
+    public Lane getLane() {
+        return Lane.HEAVY_READ;
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return false;
+    }
+
+    @Override
+    public boolean isCoalescable() {
+        return false;
+    }
+
+    /**
+     * Файл передается только по TCP соединению, поэтому текстовый ответ содержит лишь подсказку
+     * @param args аргументы команды (не используются)
+     * @param collectionManager менеджер коллекции
+     */
+    @Override
+    public String execute(String[] args, CollectionManager collectionManager) {
+        return "Команда export выполняется только из консоли клиента: export <путь к файлу>";
+    }
+
+    @Override
+    public Path prepareFile(String[] args, CollectionManager collectionManager) {
+        return collectionManager.snapshot();
+    }
+
+    @Override
+    public String execute(String[] args, CollectionManager collectionManager, Ticket ticket) {
+        return "";
+    }
+}
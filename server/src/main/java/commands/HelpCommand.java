@@ -23,6 +23,11 @@ public class HelpCommand extends Command{
         this.commandManager = commandManager;
     }
 
+    @Override
+    public Lane getLane() {
+        return Lane.CHEAP_READ;
+    }
+
     /**
      * Исполняет команду
      * @param args аргументы команды (не используются)
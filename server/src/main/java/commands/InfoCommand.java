@@ -17,6 +17,11 @@ public class InfoCommand extends Command {
                 CommandType.WITHOUT_TICKET_DATA, false);
     }
 
+    @Override
+    public Lane getLane() {
+        return Lane.CHEAP_READ;
+    }
+
     /**
      * Исполняет команду
      * @param args аргументы команды (не используются)
@@ -1,14 +1,22 @@
 package commands;
 
+import interfaces.Streamable;
 import mainClasses.Ticket;
 import managers.CollectionManager;
 
-public class PrintFieldAscendingVenueCommand extends Command {
+import java.util.function.Consumer;
+
+public class PrintFieldAscendingVenueCommand extends Command implements Streamable {
     public PrintFieldAscendingVenueCommand() {
         super("print_field_ascending_venue", "вывести значения поля venue всех элементов в порядке возрастания",
                 CommandType.WITHOUT_TICKET_DATA, false);
     }
 
+    @Override
+    public Lane getLane() {
+        return Lane.HEAVY_READ;
+    }
+
     /**
      * Выполняет команду с заданными аргументами
      *
@@ -20,6 +28,11 @@ public class PrintFieldAscendingVenueCommand extends Command {
         return collectionManager.printFieldAscendingVenue();
     }
 
+    @Override
+    public void stream(String[] args, CollectionManager collectionManager, Consumer<String> out) {
+        collectionManager.printFieldAscendingVenue(out);
+    }
+
     @Override
     public String execute(String[] args, CollectionManager collectionManager, Ticket ticket) {
         return "";
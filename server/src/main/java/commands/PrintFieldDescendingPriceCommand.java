@@ -1,14 +1,22 @@
 package commands;
 
+import interfaces.Streamable;
 import mainClasses.Ticket;
 import managers.CollectionManager;
 
-public class PrintFieldDescendingPriceCommand extends Command {
+import java.util.function.Consumer;
+
+public class PrintFieldDescendingPriceCommand extends Command implements Streamable {
     public PrintFieldDescendingPriceCommand() {
         super("print_field_descending_price", "вывести значения поля price всех элементов в порядке убывания",
                 CommandType.WITHOUT_TICKET_DATA, false);
     }
 
+    @Override
+    public Lane getLane() {
+        return Lane.HEAVY_READ;
+    }
+
     /**
      * Выполняет команду с заданными аргументами
      *
@@ -20,6 +28,11 @@ public class PrintFieldDescendingPriceCommand extends Command {
         return collectionManager.printFieldDescendingPrice();
     }
 
+    @Override
+    public void stream(String[] args, CollectionManager collectionManager, Consumer<String> out) {
+        collectionManager.printFieldDescendingPrice(out);
+    }
+
     @Override
     public String execute(String[] args, CollectionManager collectionManager, Ticket ticket) {
         return "";
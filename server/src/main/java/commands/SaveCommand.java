@@ -16,6 +16,22 @@ public class SaveCommand extends Command {
         super("save", "сохранить коллекцию в файл", CommandType.WITHOUT_TICKET_DATA, false);
     }
 
+    @Override
+    public Lane getLane() {
+        return Lane.HEAVY_READ;
+    }
+
+    @Override
+    public boolean isCacheable() {
+        // Команда записывает файл, поэтому должна выполняться при каждом запросе
+        return false;
+    }
+
+    @Override
+    public boolean isCoalescable() {
+        return false;
+    }
+
     /**
      * Исполняет команду
      * @param args аргументы команды (не используются)
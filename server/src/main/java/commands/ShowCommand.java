@@ -1,14 +1,22 @@
 package commands;
 
+import interfaces.Streamable;
 import mainClasses.Ticket;
 import managers.CollectionManager;
 
-public class ShowCommand extends Command {
+import java.util.function.Consumer;
+
+public class ShowCommand extends Command implements Streamable {
     public ShowCommand() {
         super("show", "вывести все элементы коллекции",
                 CommandType.WITHOUT_TICKET_DATA, false);
     }
 
+    @Override
+    public Lane getLane() {
+        return Lane.HEAVY_READ;
+    }
+
     @Override
     public String execute(String[] args, CollectionManager collectionManager) {
         if (args.length > 0) {
@@ -18,6 +26,15 @@ public class ShowCommand extends Command {
         }
     }
 
+    @Override
+    public void stream(String[] args, CollectionManager collectionManager, Consumer<String> out) {
+        if (args.length > 0) {
+            out.accept("Данная команда не принимает аргументы!");
+        } else {
+            collectionManager.showCollectionElements(out);
+        }
+    }
+
     @Override
     public String execute(String[] args, CollectionManager collectionManager, Ticket ticket) {
         return "";
@@ -0,0 +1,56 @@
+package commands;
+
+import interfaces.Streamable;
+import mainClasses.Ticket;
+import managers.CollectionManager;
+
+import java.util.function.Consumer;
+
+/**
+ * Команда 'show_delta'
+ * Выводит изменения коллекции после указанной версии, чтобы опрашивающий клиент не получал всю коллекцию заново
+ */
+public class ShowDeltaCommand extends Command implements Streamable {
+
+    /**
+     * Создает команду show_delta
+     */
+    public ShowDeltaCommand() {
+        super("show_delta", "вывести изменения коллекции после указанной версии",
+                CommandType.WITHOUT_TICKET_DATA, true);
+    }
+
+    @Override
+    public Lane getLane() {
+        // Клиент с устаревшей версией получает всю коллекцию
+        return Lane.HEAVY_READ;
+    }
+
+    @Override
+    public String execute(String[] args, CollectionManager collectionManager) {
+        StringBuilder res = new StringBuilder();
+        stream(args, collectionManager, res::append);
+        return res.toString();
+    }
+
+    @Override
+    public void stream(String[] args, CollectionManager collectionManager, Consumer<String> out) {
+        if (args.length != 1) {
+            out.accept("Укажите последнюю известную версию коллекции!");
+            return;
+        }
+        long since;
+        try {
+            since = Long.parseLong(args[0]);
+        } catch (NumberFormatException e) {
+            out.accept("Версия коллекции должна быть целым числом!");
+            return;
+        }
+        collectionManager.showChangesSince(since, out);
+    }
+
+    @Override
+    public String execute(String[] args, CollectionManager collectionManager, Ticket ticket) {
+        return "";
+    }
+}
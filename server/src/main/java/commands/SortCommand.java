@@ -1,16 +1,23 @@
 package commands;
 
+import interfaces.Streamable;
 import mainClasses.Ticket;
 import managers.CollectionManager;
 
 import java.util.Vector;
+import java.util.function.Consumer;
 
-public class SortCommand extends Command {
+public class SortCommand extends Command implements Streamable {
     public SortCommand() {
         super("sort", "отсортировать коллекцию в естественном порядке",
                 CommandType.WITHOUT_TICKET_DATA, false);
     }
 
+    @Override
+    public Lane getLane() {
+        return Lane.HEAVY_READ;
+    }
+
     /**
      * Выполняет команду с заданными аргументами
      *
@@ -23,6 +30,16 @@ public class SortCommand extends Command {
         return "Коллекция отсортирована успешно: \n" + sortedCollection.toString();
     }
 
+    @Override
+    public void stream(String[] args, CollectionManager collectionManager, Consumer<String> out) {
+        Vector<Ticket> sortedCollection = collectionManager.sortCollection();
+        out.accept("Коллекция отсортирована успешно: \n[");
+        for (int i = 0; i < sortedCollection.size(); i++) {
+            out.accept(i == 0 ? sortedCollection.get(i).toString() : ", " + sortedCollection.get(i));
+        }
+        out.accept("]");
+    }
+
     @Override
     public String execute(String[] args, CollectionManager collectionManager, Ticket ticket) {
         return "";
@@ -0,0 +1,9 @@
+package exceptions;
+
+import java.io.IOException;
+
+public class SlowConsumerException extends IOException {
+    public SlowConsumerException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,20 @@
+package interfaces;
+
+import managers.CollectionManager;
+
+import java.nio.file.Path;
+
+/**
+ * Интерфейс для команд, результатом которых является файл на сервере
+ * Содержимое такого файла передается клиенту напрямую из файла в сокет, без копирования в кучу
+ */
+public interface FileTransferable {
+    /**
+     * Подготавливает файл для передачи клиенту
+     * @param args аргументы команды
+     * @param collectionManager менеджер коллекции, над которой выполняется команда
+     * @return путь к файлу, который нужно передать
+     * @throws IllegalStateException если файл не удалось подготовить
+     */
+    Path prepareFile(String[] args, CollectionManager collectionManager);
+}
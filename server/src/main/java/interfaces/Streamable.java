@@ -0,0 +1,19 @@
+package interfaces;
+
+import managers.CollectionManager;
+
+import java.util.function.Consumer;
+
+/**
+ * Интерфейс для команд, способных передавать большой результат частями
+ * Такая команда не собирает весь результат в одну строку, а отдает его приемнику по мере формирования
+ */
+public interface Streamable {
+    /**
+     * Выполняет команду, передавая части результата в приемник
+     * @param args аргументы команды
+     * @param collectionManager менеджер коллекции, над которой выполняется команда
+     * @param out приемник частей результата
+     */
+    void stream(String[] args, CollectionManager collectionManager, Consumer<String> out);
+}
@@ -0,0 +1,52 @@
+package managers;
+
+import mainClasses.Ticket;
+
+/**
+ * Запись журнала изменений коллекции
+ * Хранит версию коллекции после изменения, вид изменения и затронутый билет
+ */
+public class CollectionChange {
+    /**
+     * Вид изменения коллекции
+     */
+    public enum Kind {
+        ADDED, UPDATED, REMOVED;
+    }
+
+    private final long version;
+    private final Kind kind;
+    private final int id;
+    /** Билет после изменения; null для удаления */
+    private final Ticket ticket;
+
+    /**
+     * Создает запись журнала
+     * @param version версия коллекции после изменения
+     * @param kind вид изменения
+     * @param id идентификатор билета
+     * @param ticket билет после изменения или null для удаления
+     */
+    public CollectionChange(long version, Kind kind, int id, Ticket ticket) {
+        this.version = version;
+        this.kind = kind;
+        this.id = id;
+        this.ticket = ticket;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Ticket getTicket() {
+        return ticket;
+    }
+}
@@ -3,10 +3,27 @@ package managers;
 import mainClasses.Ticket;
 import mainClasses.TicketType;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 import java.util.stream.Collectors;
 
 /**
@@ -14,11 +31,67 @@ import java.util.stream.Collectors;
  * Управляет коллекцией объектов Worker, обеспечивая операции добавления, удаления и модификации элементов
  */
 public class CollectionManager {
+    /**
+     * Билеты коллекции не меняются после добавления: обновление ставит на место билета новый объект
+     * Поэтому ссылки, скопированные под блокировкой чтения, можно упорядочивать и выводить без нее
+     */
     private Vector<Ticket> ticketsCollection;
+    /** Индекс билетов коллекции по id; меняется только под блокировкой записи вместе с коллекцией */
+    private final TicketIdIndex idIndex = new TicketIdIndex();
+    /**
+     * Шаг порядковых ключей соседних билетов
+     * Промежутки между ключами позволяют вставить билет в середину коллекции, не меняя ключи остальных
+     */
+    private static final long ORDER_GAP = 1L << 20;
+    /** Порядок вывода show: по имени, при равных именах по id */
+    private static final Comparator<Ticket> BY_NAME = Comparator
+            .comparing(Ticket::getName, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparing(Ticket::getId);
+    /** Порядок вывода print_field_descending_price: по убыванию цены, при равных ценах по id */
+    private static final Comparator<Ticket> BY_PRICE_DESCENDING = Comparator
+            .comparingInt(Ticket::getPrice).reversed()
+            .thenComparing(Ticket::getId);
+    /** Порядок вывода print_field_ascending_venue: сначала билеты без места проведения, затем по вместимости и id */
+    private static final Comparator<Ticket> BY_VENUE_CAPACITY = Comparator
+            .comparing((Ticket ticket) -> ticket.getVenue() == null ? null : ticket.getVenue().getCapacity(),
+                    Comparator.nullsFirst(Comparator.<Long>naturalOrder()))
+            .thenComparing(Ticket::getId);
+    /**
+     * Упорядоченные индексы билетов для команд вывода; меняются под блокировкой записи вместе с коллекцией
+     */
+    private final NavigableSet<Ticket> byName = new TreeSet<>(BY_NAME);
+    private final NavigableSet<Ticket> byPriceDescending = new TreeSet<>(BY_PRICE_DESCENDING);
+    private final NavigableSet<Ticket> byVenueCapacity = new TreeSet<>(BY_VENUE_CAPACITY);
+    /** Количество билетов каждого типа; меняется под блокировкой записи вместе с индексами */
+    private final EnumMap<TicketType, LongAdder> typeCounts = new EnumMap<>(TicketType.class);
+    /** Количество билетов без типа */
+    private final LongAdder untypedCount = new LongAdder();
+    /**
+     * Наибольший выданный или загруженный id билета
+     * Не уменьшается при удалении билетов и сохраняется вместе с коллекцией, поэтому id не выдаются повторно
+     */
+    private final AtomicInteger lastId = new AtomicInteger();
     private final LocalDate creationDate;
     private final CollectionWriter writer = new CollectionWriter();
     private final CollectionParser parser = new CollectionParser(this);
     private String filePath;
+    /** Блокировка коллекции: команды чтения выполняются параллельно, изменения - по одному */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Версия коллекции, увеличивается каждым изменением под блокировкой записи
+     * Начинается с текущего времени в микросекундах, поэтому продолжает расти и после перезапуска сервера
+     */
+    private volatile long version = System.currentTimeMillis() * 1000;
+    /** Получатель новой версии коллекции, вызываемый после каждого изменения; null если не задан */
+    private volatile LongConsumer versionListener;
+    /** Наибольшее количество записей в журнале изменений */
+    private static final int CHANGE_LOG_CAPACITY = 4096;
+    /** Журнал последних изменений по возрастанию версий; меняется только под блокировкой записи */
+    private final ArrayDeque<CollectionChange> changeLog = new ArrayDeque<>();
+    /** Версия, после которой журнал содержит все изменения коллекции */
+    private long changeLogStart = version;
+    /** Версия коллекции, совпадающая с содержимым файла */
+    private volatile long savedVersion = -1;
 
     /**
      * Создает новый менеджер коллекции
@@ -27,6 +100,9 @@ public class CollectionManager {
     public CollectionManager() {
         ticketsCollection = new Vector<Ticket>();
         creationDate = LocalDate.now();
+        for (TicketType type : TicketType.values()) {
+            typeCounts.put(type, new LongAdder());
+        }
     }
 
     /**
@@ -43,23 +119,103 @@ public class CollectionManager {
      * @param filePath путь к файлу
      */
     public String loadCollectionFromFile(String filePath) {
-        this.filePath = filePath;
-        HashMap<String, Vector<Ticket>> zalupa = new HashMap<>();
-        zalupa = parser.parseFromFile(filePath);
-        String message = zalupa.keySet().iterator().next();
-        ticketsCollection = zalupa.get(message);
-        return message;
+        lock.writeLock().lock();
+        try {
+            this.filePath = filePath;
+            HashMap<String, Vector<Ticket>> zalupa = new HashMap<>();
+            zalupa = parser.parseFromFile(filePath);
+            String message = zalupa.keySet().iterator().next();
+            ticketsCollection = zalupa.get(message);
+            rebuildIndexes();
+            bumpVersion();
+            lastId.set(maxId(ticketsCollection, Math.max(0, parser.getNextId() - 1)));
+            savedVersion = version;
+            resetChangeLog();
+            return message;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
      * Сохраняет коллекцию в файл
-     * @throws IllegalStateException если путь к файлу не установлен
+     * @throws IllegalStateException если путь к файлу не установлен или файл не удалось записать
      */
     public void saveCollectionToFile() {
+        lock.readLock().lock();
+        try {
+            save();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает путь к файлу коллекции, предварительно сохранив коллекцию, если она менялась после сохранения
+     * Файл заменяется при сохранении атомарно, поэтому открытый по этому пути файл остается целым
+     * даже при одновременном сохранении
+     * @return путь к файлу с актуальным содержимым коллекции
+     * @throws IllegalStateException если путь к файлу не установлен или файл не удалось записать
+     */
+    public Path snapshot() {
+        lock.readLock().lock();
+        try {
+            if (filePath == null) {
+                throw new IllegalStateException("Путь к файлу не установлен");
+            }
+            Path path = Path.of(filePath);
+            if (version != savedVersion || !Files.exists(path)) {
+                save();
+            }
+            return path;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Записывает коллекцию в файл; вызывается под блокировкой чтения, поэтому версия не меняется
+     */
+    private void save() {
         if (filePath == null) {
             throw new IllegalStateException("Путь к файлу не установлен");
         }
-        writer.writeToFile(filePath, ticketsCollection);
+        synchronized (writer) {
+            if (!writer.writeToFile(filePath, ticketsCollection, lastId.get() + 1)) {
+                throw new IllegalStateException("Не удалось записать файл " + filePath);
+            }
+            savedVersion = version;
+        }
+    }
+
+    /**
+     * Увеличивает версию коллекции; вызывается под блокировкой записи только после настоящего изменения,
+     * чтобы неудачные команды не делали ненужными кэш ответов и совмещение одинаковых чтений
+     */
+    private void bumpVersion() {
+        version++;
+        LongConsumer listener = versionListener;
+        if (listener != null) {
+            listener.accept(version);
+        }
+    }
+
+    /**
+     * Задает получателя новой версии коллекции
+     * Получатель вызывается под блокировкой записи, поэтому не должен обращаться к коллекции
+     * @param versionListener получатель версии или null
+     */
+    public void setVersionListener(LongConsumer versionListener) {
+        this.versionListener = versionListener;
+    }
+
+    /**
+     * Возвращает версию коллекции
+     * Пока версия не изменилась, команды чтения с одинаковыми аргументами дают одинаковый результат
+     * @return текущая версия
+     */
+    public long getVersion() {
+        return version;
     }
 
     /**
@@ -83,7 +239,16 @@ public class CollectionManager {
      * @param ticketsCollection новая коллекция
      */
     public void setTicketsCollection(Vector<Ticket> ticketsCollection) {
-        this.ticketsCollection = ticketsCollection;
+        lock.writeLock().lock();
+        try {
+            this.ticketsCollection = ticketsCollection;
+            rebuildIndexes();
+            bumpVersion();
+            lastId.accumulateAndGet(maxId(ticketsCollection, 0), Math::max);
+            resetChangeLog();
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -91,9 +256,14 @@ public class CollectionManager {
      * @return строка с информацией о типе, дате создания и размере коллекции
      */
     public String getCollectionInfo() {
-        return ("Type - " + ticketsCollection.getClass().getName() +
-                "\nCreation date - " + getCreationDate() +
-                "\nAmount of elements - " + ticketsCollection.size());
+        lock.readLock().lock();
+        try {
+            return ("Type - " + ticketsCollection.getClass().getName() +
+                    "\nCreation date - " + getCreationDate() +
+                    "\nAmount of elements - " + ticketsCollection.size());
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -101,14 +271,270 @@ public class CollectionManager {
      */
     public String showCollectionElements() {
         StringBuilder res = new StringBuilder();
+        showCollectionElements(res::append);
+        return res.toString();
+    }
+
+    /**
+     * Передает элементы коллекции, упорядоченные по имени, по одному в приемник
+     * @param out приемник частей результата
+     */
+    public void showCollectionElements(Consumer<String> out) {
+        Ticket[] tickets = orderedSnapshot(byName);
+        if (tickets.length == 0) {
+            out.accept("Коллекция пуста");
+            return;
+        }
+        for (Ticket ticket : tickets) {
+            out.accept(ticket.toString());
+        }
+    }
+
+    /**
+     * Передает в приемник изменения коллекции после указанной версии
+     * Первой частью передается текущая версия коллекции; если журнал не содержит всех изменений после
+     * указанной версии, вместо изменений передаются все элементы коллекции
+     * @param since последняя версия коллекции, известная клиенту
+     * @param out приемник частей результата
+     */
+    public void showChangesSince(long since, Consumer<String> out) {
+        long current;
+        Collection<CollectionChange> changes = null;
+        Ticket[] tickets = null;
+        lock.readLock().lock();
+        try {
+            current = version;
+            if (since >= changeLogStart && since <= current) {
+                changes = mergeChanges(since);
+            } else {
+                tickets = byName.toArray(new Ticket[0]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        out.accept("Версия коллекции: " + current + "\n");
+        if (tickets != null) {
+            out.accept("Полный снимок коллекции:\n");
+            if (tickets.length == 0) {
+                out.accept("Коллекция пуста");
+                return;
+            }
+            for (Ticket ticket : tickets) {
+                out.accept(ticket.toString());
+            }
+            return;
+        }
+        if (changes.isEmpty()) {
+            out.accept("Изменений нет");
+            return;
+        }
+        for (CollectionChange change : changes) {
+            switch (change.getKind()) {
+                case ADDED:
+                    out.accept("Добавлен " + change.getTicket() + "\n");
+                    break;
+                case UPDATED:
+                    out.accept("Изменен " + change.getTicket() + "\n");
+                    break;
+                default:
+                    out.accept("Удален билет с id = " + change.getId() + "\n");
+            }
+        }
+    }
+
+    /**
+     * Сводит записи журнала после указанной версии к итоговому изменению каждого билета
+     * Вызывается под блокировкой чтения
+     */
+    private Collection<CollectionChange> mergeChanges(long since) {
+        Map<Integer, CollectionChange> merged = new LinkedHashMap<>();
+        Iterator<CollectionChange> newestFirst = changeLog.descendingIterator();
+        Deque<CollectionChange> recent = new ArrayDeque<>();
+        while (newestFirst.hasNext()) {
+            CollectionChange change = newestFirst.next();
+            if (change.getVersion() <= since) break;
+            recent.addFirst(change);
+        }
+        for (CollectionChange change : recent) {
+            CollectionChange previous = merged.get(change.getId());
+            CollectionChange.Kind kind = change.getKind();
+            if (previous != null && previous.getKind() == CollectionChange.Kind.ADDED) {
+                if (kind == CollectionChange.Kind.REMOVED) {
+                    // Клиент не видел ни добавления, ни удаления
+                    merged.remove(change.getId());
+                    continue;
+                }
+                kind = CollectionChange.Kind.ADDED;
+            } else if (previous != null && previous.getKind() == CollectionChange.Kind.REMOVED
+                    && kind == CollectionChange.Kind.ADDED) {
+                // Идентификатор занят новым билетом, а у клиента остался прежний
+                kind = CollectionChange.Kind.UPDATED;
+            }
+            merged.put(change.getId(), new CollectionChange(change.getVersion(), kind, change.getId(), change.getTicket()));
+        }
+        return merged.values();
+    }
+
+    /**
+     * Записывает изменение в журнал, вытесняя самую старую запись при переполнении
+     * Вызывается под блокировкой записи после увеличения версии
+     */
+    private void logChange(CollectionChange.Kind kind, int id, Ticket ticket) {
+        if (changeLog.size() == CHANGE_LOG_CAPACITY) {
+            changeLogStart = changeLog.removeFirst().getVersion();
+        }
+        changeLog.addLast(new CollectionChange(version, kind, id, ticket));
+    }
+
+    /**
+     * Очищает журнал: клиенты с более ранними версиями получат полный снимок
+     * Вызывается под блокировкой записи после увеличения версии
+     */
+    private void resetChangeLog() {
+        changeLog.clear();
+        changeLogStart = version;
+    }
+
+    /**
+     * Копирует ссылки на элементы коллекции в порядке индекса
+     * Под блокировкой выполняется только обход индекса; билеты коллекции не меняются,
+     * поэтому формирование текста идет без нее
+     * @param index упорядоченный индекс
+     * @return упорядоченный массив элементов
+     */
+    private Ticket[] orderedSnapshot(NavigableSet<Ticket> index) {
+        lock.readLock().lock();
+        try {
+            return index.toArray(new Ticket[0]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Добавляет билет во все индексы; вызывается под блокировкой записи
+     */
+    private void index(Ticket ticket, long order) {
+        idIndex.put(ticket.getId(), ticket, order);
+        byName.add(ticket);
+        byPriceDescending.add(ticket);
+        byVenueCapacity.add(ticket);
+        typeCount(ticket.getTicketType()).increment();
+    }
+
+    /**
+     * Удаляет билет из индексов по его полям; вызывается под блокировкой записи
+     */
+    private void unindexFields(Ticket ticket) {
+        byName.remove(ticket);
+        byPriceDescending.remove(ticket);
+        byVenueCapacity.remove(ticket);
+        typeCount(ticket.getTicketType()).decrement();
+    }
+
+    /**
+     * Очищает все индексы и счетчики; вызывается под блокировкой записи
+     */
+    private void clearIndexes() {
+        idIndex.clear();
+        byName.clear();
+        byPriceDescending.clear();
+        byVenueCapacity.clear();
+        typeCounts.values().forEach(LongAdder::reset);
+        untypedCount.reset();
+    }
+
+    private LongAdder typeCount(TicketType type) {
+        return type == null ? untypedCount : typeCounts.get(type);
+    }
+
+    /**
+     * Заполняет индексы билетами коллекции заново; вызывается под блокировкой записи
+     * Билеты без id и повторы id удаляются из коллекции: их нельзя было бы найти по индексу
+     */
+    private void rebuildIndexes() {
+        clearIndexes();
+        long order = 0;
+        Iterator<Ticket> iterator = ticketsCollection.iterator();
+        while (iterator.hasNext()) {
+            Ticket ticket = iterator.next();
+            if (ticket == null || ticket.getId() == null || idIndex.get(ticket.getId()) != null) {
+                iterator.remove();
+                continue;
+            }
+            order += ORDER_GAP;
+            index(ticket, order);
+        }
+    }
+
+    /**
+     * Находит позицию билета в коллекции двоичным поиском по порядковому ключу
+     * Вызывается под блокировкой, пока билет есть в индексе
+     * @param ticket билет коллекции
+     * @return позиция билета
+     */
+    private int positionOf(Ticket ticket) {
+        long order = idIndex.getOrder(ticket.getId());
+        int low = 0;
+        int high = ticketsCollection.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleOrder = idIndex.getOrder(ticketsCollection.get(middle).getId());
+            if (middleOrder < order) {
+                low = middle + 1;
+            } else if (middleOrder > order) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        throw new IllegalStateException("Билет с id = " + ticket.getId() + " отсутствует в коллекции");
+    }
+
+    /**
+     * Возвращает порядковый ключ для билета, добавляемого в конец коллекции; вызывается под блокировкой записи
+     */
+    private long nextOrder() {
         if (ticketsCollection.isEmpty()) {
-            res.append("Коллекция пуста");
-        } else {
-            ticketsCollection.stream()
-                    .sorted(Comparator.comparing(Ticket::getName))
-                    .map(Ticket::toString).forEach(res::append);
+            return ORDER_GAP;
+        }
+        long last = idIndex.getOrder(ticketsCollection.lastElement().getId());
+        if (last > Long.MAX_VALUE - ORDER_GAP) {
+            renumberOrders();
+            last = ticketsCollection.size() * ORDER_GAP;
+        }
+        return last + ORDER_GAP;
+    }
+
+    /**
+     * Возвращает порядковый ключ для билета, вставляемого перед билетом на указанной позиции
+     * Если между соседними ключами не осталось места, ключи всех билетов назначаются заново
+     * Вызывается под блокировкой записи
+     */
+    private long orderBefore(int index) {
+        while (true) {
+            long next = idIndex.getOrder(ticketsCollection.get(index).getId());
+            if (index == 0) {
+                if (next > Long.MIN_VALUE + ORDER_GAP) {
+                    return next - ORDER_GAP;
+                }
+            } else {
+                long previous = idIndex.getOrder(ticketsCollection.get(index - 1).getId());
+                if (next - previous > 1) {
+                    return previous + (next - previous) / 2;
+                }
+            }
+            renumberOrders();
+        }
+    }
+
+    /**
+     * Назначает билетам порядковые ключи с равным шагом; вызывается под блокировкой записи
+     */
+    private void renumberOrders() {
+        for (int i = 0; i < ticketsCollection.size(); i++) {
+            idIndex.setOrder(ticketsCollection.get(i).getId(), (i + 1) * ORDER_GAP);
         }
-        return res.toString();
     }
 
     /**
@@ -116,12 +542,20 @@ public class CollectionManager {
      * @param ticket новый работник
      */
     public void addElement(Ticket ticket) {
-        ticket.setId(generateId());
-        if (ticket == null) {
-            throw new IllegalArgumentException("Билет не может быть null");
+        lock.writeLock().lock();
+        try {
+            if (ticket == null) {
+                throw new IllegalArgumentException("Билет не может быть null");
+            }
+            ticket.setId(generateId());
+            long order = nextOrder();
+            ticketsCollection.add(ticket);
+            index(ticket, order);
+            bumpVersion();
+            logChange(CollectionChange.Kind.ADDED, ticket.getId(), ticket);
+        } finally {
+            lock.writeLock().unlock();
         }
-
-        ticketsCollection.add(ticket);
     }
 
     /**
@@ -130,16 +564,22 @@ public class CollectionManager {
      * @param new_ticket новые данные работника
      */
     public void updateElement(int id, Ticket new_ticket) {
-        ticketsCollection.stream().filter(ticket -> ticket.getId() == id).findFirst().
-                ifPresent(ticket -> {
-                    ticket.setId(new_ticket.getId());
-                    ticket.setName(new_ticket.getName());
-                    ticket.setCoordinates(new_ticket.getCoordinates());
-                    ticket.setPrice(new_ticket.getPrice());
-                    ticket.setRefundable(new_ticket.getRefundable());
-                    ticket.setTicketType(new_ticket.getTicketType());
-                    ticket.setVenue(new_ticket.getVenue());
-                });
+        lock.writeLock().lock();
+        try {
+            Ticket old = idIndex.get(id);
+            if (old != null) {
+                // Прежний билет мог быть скопирован читателем, поэтому он не меняется, а заменяется новым
+                Ticket ticket = new Ticket(id, new_ticket.getName(), new_ticket.getCoordinates(), old.getCreationDate(),
+                        new_ticket.getPrice(), new_ticket.getRefundable(), new_ticket.getTicketType(), new_ticket.getVenue());
+                ticketsCollection.set(positionOf(old), ticket);
+                unindexFields(old);
+                index(ticket, idIndex.getOrder(id));
+                bumpVersion();
+                logChange(CollectionChange.Kind.UPDATED, id, ticket);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -147,38 +587,84 @@ public class CollectionManager {
      * @param id идентификатор работника
      */
     public void removeElement(int id) {
-        ticketsCollection.removeIf(ticket -> ticket.getId() == id);
+        lock.writeLock().lock();
+        try {
+            Ticket removed = idIndex.get(id);
+            if (removed != null) {
+                // Позиция находится по порядковому ключу, поэтому коллекция не просматривается целиком
+                ticketsCollection.remove(positionOf(removed));
+                idIndex.remove(id);
+                unindexFields(removed);
+                bumpVersion();
+                logChange(CollectionChange.Kind.REMOVED, id, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
      * Очищает коллекцию
      */
     public void clearCollection() {
-        ticketsCollection.clear();
+        lock.writeLock().lock();
+        try {
+            if (ticketsCollection.isEmpty()) return;
+            ticketsCollection.clear();
+            clearIndexes();
+            bumpVersion();
+            // Полный снимок пустой коллекции короче списка удалений
+            resetChangeLog();
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
      * Удаляет первый элемент коллекции
      */
     public void removeFirstElement() {
-        ticketsCollection.remove(0);
+        lock.writeLock().lock();
+        try {
+            Ticket removed = ticketsCollection.remove(0);
+            idIndex.remove(removed.getId());
+            unindexFields(removed);
+            bumpVersion();
+            logChange(CollectionChange.Kind.REMOVED, removed.getId(), null);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     public String insertAt(Ticket ticket, int index) {
-        if (ticketsCollection.size() <= index) {
-            return "Позиция нового элемента не может быть больше количества элементов в коллекции!";
+        lock.writeLock().lock();
+        try {
+            if (ticketsCollection.size() <= index) {
+                return "Позиция нового элемента не может быть больше количества элементов в коллекции!";
+            }
+            long order = orderBefore(index);
+            ticket.setId(generateId());
+            ticketsCollection.add(index, ticket);
+            index(ticket, order);
+            bumpVersion();
+            logChange(CollectionChange.Kind.ADDED, ticket.getId(), ticket);
+            return "Элемент успешно добавлен на позицию " + index;
+        } finally {
+            lock.writeLock().unlock();
         }
-        ticket.setId(generateId());
-        ticketsCollection.add(index, ticket);
-        return "Элемент успешно добавлен на позицию " + index;
     }
 
     public Vector<Ticket> sortCollection() {
-        Comparator<Ticket> idComparator = Comparator.comparingInt(Ticket::getId);
-        Vector<Ticket> sortedCollection = ticketsCollection.stream()
-                .sorted(idComparator)
-                .collect(Collectors.toCollection(Vector::new));
-        return sortedCollection;
+        lock.readLock().lock();
+        try {
+            Comparator<Ticket> idComparator = Comparator.comparingInt(Ticket::getId);
+            Vector<Ticket> sortedCollection = ticketsCollection.stream()
+                    .sorted(idComparator)
+                    .collect(Collectors.toCollection(Vector::new));
+            return sortedCollection;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
 
@@ -186,47 +672,96 @@ public class CollectionManager {
      * Выводит значения поля salary в порядке возрастания
      */
     public String printFieldAscendingVenue() {
-        if (ticketsCollection.isEmpty()) {
-            return "Коллекция пуста";
-        }
         StringBuilder res = new StringBuilder();
-        ticketsCollection.stream()
-                .sorted(Comparator.comparing(ticket -> ticket.getVenue().getCapacity()))
-                .forEach(ticket ->  res.append(ticket.getVenue()).append("\n"));
+        printFieldAscendingVenue(res::append);
         return res.toString();
     }
 
-    public String printFieldDescendingPrice() {
-        if (ticketsCollection.isEmpty()) {
-            return "Коллекция пуста";
+    /**
+     * Передает значения поля venue в порядке возрастания вместимости по одному в приемник
+     * @param out приемник частей результата
+     */
+    public void printFieldAscendingVenue(Consumer<String> out) {
+        Ticket[] tickets = orderedSnapshot(byVenueCapacity);
+        if (tickets.length == 0) {
+            out.accept("Коллекция пуста");
+            return;
+        }
+        for (Ticket ticket : tickets) {
+            out.accept(ticket.getVenue() + "\n");
         }
+    }
+
+    public String printFieldDescendingPrice() {
         StringBuilder res = new StringBuilder();
-        ticketsCollection.stream()
-                .sorted(Comparator.comparing(Ticket::getPrice).reversed())
-                .forEach(ticket -> res.append(ticket.getPrice()).append("\n"));
+        printFieldDescendingPrice(res::append);
         return res.toString();
     }
 
+    /**
+     * Передает значения поля price в порядке убывания по одному в приемник
+     * @param out приемник частей результата
+     */
+    public void printFieldDescendingPrice(Consumer<String> out) {
+        Ticket[] tickets = orderedSnapshot(byPriceDescending);
+        if (tickets.length == 0) {
+            out.accept("Коллекция пуста");
+            return;
+        }
+        for (Ticket ticket : tickets) {
+            out.accept(ticket.getPrice() + "\n");
+        }
+    }
+
+    /**
+     * Считает билеты, тип которых больше указанного; билеты без типа не учитываются
+     * Складываются счетчики типов после указанного, поэтому время не зависит от размера коллекции
+     * @param ticketType тип билета
+     * @return количество билетов
+     */
     public long countGreaterThan (TicketType ticketType) {
-        return ticketsCollection.stream()
-                .filter(ticket -> ticket.getTicketType() != null)
-                .filter(ticket -> ticket.getTicketType().ordinal() > ticketType.ordinal()).count();
+        lock.readLock().lock();
+        try {
+            long count = 0;
+            TicketType[] types = TicketType.values();
+            for (int i = ticketType.ordinal() + 1; i < types.length; i++) {
+                count += typeCounts.get(types[i]).sum();
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
 
 
     /**
-     * Генерирует уникальный идентификатор для нового работника
-     * @return новый уникальный id, на единицу больше максимального в коллекции
+     * Генерирует уникальный идентификатор для нового билета
+     * @return новый id, на единицу больше наибольшего когда-либо выданного или загруженного
+     * @throws IllegalStateException если свободные id закончились
      */
     public int generateId() {
-        if (ticketsCollection.isEmpty()) {
-            return 1;
+        int last = lastId.getAndUpdate(value -> value == Integer.MAX_VALUE ? value : value + 1);
+        if (last == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Свободные id билетов закончились");
+        }
+        return last + 1;
+    }
+
+    /**
+     * Находит наибольший id среди билетов
+     * @param tickets билеты
+     * @param floor значение, если все id меньше него
+     * @return наибольший id, но не меньше floor
+     */
+    private static int maxId(Collection<Ticket> tickets, int floor) {
+        int max = floor;
+        for (Ticket ticket : tickets) {
+            if (ticket.getId() != null && ticket.getId() > max) {
+                max = ticket.getId();
+            }
         }
-        return ticketsCollection.stream()
-                .mapToInt(Ticket::getId)
-                .max()
-                .orElse(0) + 1;
+        return max;
     }
 
 
@@ -13,17 +13,26 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
+import protocol.TicketCodec;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.ZonedDateTime;
 import java.util.*;
 
 /**
  * Класс для парсинга коллекции билетов из XML файла с использованием Scanner
+ * Файлы с расширением .bin читаются как двоичные снимки
  */
 public class CollectionParser {
     private final CollectionManager collectionManager;
+    /** Следующий свободный id из последнего прочитанного файла, 0 если файл его не содержит */
+    private int nextId;
 
     public CollectionParser(CollectionManager collectionManager) {
         this.collectionManager = collectionManager;
@@ -33,7 +42,46 @@ public class CollectionParser {
         Vector<Ticket> tickets = new Vector<>();
         Set<Integer> idishniki = new HashSet<>();
         String res = "";
+        nextId = 0;
 
+        try {
+            List<Ticket> parsed = CollectionWriter.isSnapshot(filePath) ? readSnapshot(filePath) : readXml(filePath);
+            HashMap<String, Vector<Ticket>> result = new HashMap<>();
+
+            for (Ticket ticket : parsed) {
+                if (ticket != null) {
+                    if (idishniki.add(ticket.getId())) {
+                        tickets.add(ticket);
+                    } else {
+                        res = "Обнаружено несколько билетов с одинаковым ID!" +
+                                "\nВ коллекцию добавлен только один билет с id = " +
+                                idishniki.stream().max(Integer::compareTo).orElse(null);
+                    }
+                }
+            }
+            result.put(res, tickets);
+            return result;
+        } catch (Exception e) {
+            HashMap<String, Vector<Ticket>> result = new HashMap<>();
+            result.put("Ошибка: " + e.getMessage() + " Коллекция не добавлена!", new Vector<>());
+            return result;
+        }
+    }
+
+    /**
+     * Возвращает следующий свободный id, сохраненный в последнем прочитанном файле
+     * Id удаленных билетов могут быть больше наибольшего id в файле, поэтому сохраненное значение
+     * не позволяет выдать их повторно
+     * @return следующий свободный id или 0, если файл его не содержит
+     */
+    public int getNextId() {
+        return nextId;
+    }
+
+    /**
+     * Читает билеты из XML файла; некорректные билеты заменяются null
+     */
+    private List<Ticket> readXml(String filePath) throws Exception {
         try (Scanner scanner = new Scanner(new File(filePath))) {
             // Читаем весь файл в строку
             StringBuilder xmlContent = new StringBuilder();
@@ -45,32 +93,65 @@ public class CollectionParser {
             DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
             DocumentBuilder builder = factory.newDocumentBuilder();
             Document document = builder.parse(new InputSource(new StringReader(xmlContent.toString())));
+            String storedNextId = document.getDocumentElement().getAttribute("nextId");
+            if (!storedNextId.isEmpty()) {
+                try {
+                    nextId = Integer.parseInt(storedNextId.trim());
+                } catch (NumberFormatException e) {
+                    // id будут продолжены от наибольшего id в файле
+                    System.out.println("Некорректное значение nextId: " + storedNextId);
+                }
+            }
 
             NodeList ticketNodes = document.getElementsByTagName("ticket");
-            HashMap<String, Vector<Ticket>> result = new HashMap<>();
-
+            List<Ticket> parsed = new ArrayList<>(ticketNodes.getLength());
             for (int i = 0; i < ticketNodes.getLength(); i++) {
                 Node ticketNode = ticketNodes.item(i);
                 if (ticketNode.getNodeType() == Node.ELEMENT_NODE) {
-                    Element ticketElement = (Element) ticketNode;
-                    Ticket ticket = parseTicket(ticketElement);
-                    if (ticket != null) {
-                        if (idishniki.add(ticket.getId())) {
-                            tickets.add(ticket);
-                        } else {
-                            res = "Обнаружено несколько билетов с одинаковым ID!" +
-                                    "\nВ коллекцию добавлен только один билет с id = " +
-                                    idishniki.stream().max(Integer::compareTo).orElse(null);
-                        }
+                    parsed.add(parseTicket((Element) ticketNode));
+                }
+            }
+            return parsed;
+        }
+    }
+
+    /**
+     * Читает билеты из двоичного снимка, записанного {@link CollectionWriter}; некорректные билеты заменяются null
+     */
+    private List<Ticket> readSnapshot(String filePath) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Path.of(filePath))))) {
+            if (in.readInt() != CollectionWriter.SNAPSHOT_MAGIC) {
+                throw new IOException("файл не является снимком коллекции");
+            }
+            byte version = in.readByte();
+            if (version < 1 || version > CollectionWriter.SNAPSHOT_VERSION) {
+                throw new IOException("неподдерживаемая версия снимка " + version);
+            }
+            if (version >= 2) {
+                nextId = TicketCodec.readVarInt(in);
+            }
+            int count = TicketCodec.readVarInt(in);
+            List<Ticket> parsed = new ArrayList<>(Math.min(count, 1 << 16));
+            for (int i = 0; i < count; i++) {
+                Ticket ticket = TicketCodec.readTicket(in);
+                if (ticket.getVenue() != null) {
+                    // Как и в XML, некорректное место проведения отбрасывается, а сам билет остается
+                    try {
+                        ticket.getVenue().validate();
+                    } catch (Exception e) {
+                        System.out.println("Ошибка при парсинге Venue: " + e.getMessage());
+                        ticket.setVenue(null);
                     }
                 }
+                try {
+                    ticket.validate();
+                    parsed.add(ticket);
+                } catch (Exception e) {
+                    System.out.println("Ошибка при парсинге билета: " + e.getMessage());
+                    parsed.add(null);
+                }
             }
-            result.put(res, tickets);
-            return result;
-        } catch (Exception e) {
-            HashMap<String, Vector<Ticket>> result = new HashMap<>();
-            result.put("Ошибка: " + e.getMessage() + " Коллекция не добавлена!", new Vector<>());
-            return result;
+            return parsed;
         }
     }
 
@@ -5,25 +5,63 @@ import mainClasses.TicketType;
 import mainClasses.Venue;
 import mainClasses.VenueType;
 import mainClasses.Coordinates;
+import protocol.TicketCodec;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Vector;
 
 /**
  * Класс для сохранения коллекции билетов в XML файл с использованием PrintWriter
+ * Файлы с расширением .bin сохраняются двоичными снимками, которые в несколько раз меньше XML и читаются быстрее
  */
 public class CollectionWriter {
+    /** Расширение файла, который сохраняется двоичным снимком вместо XML */
+    public static final String SNAPSHOT_EXTENSION = ".bin";
+    /** Первые байты двоичного снимка, "TKTS" */
+    public static final int SNAPSHOT_MAGIC = 0x544B5453;
+    /** Версия формата двоичного снимка; начиная со второй после заголовка хранится следующий свободный id */
+    public static final byte SNAPSHOT_VERSION = 2;
+
+    /**
+     * Проверяет, хранится ли коллекция в файле двоичным снимком
+     * @param filePath путь к файлу коллекции
+     * @return true, если файл имеет расширение двоичного снимка
+     */
+    public static boolean isSnapshot(String filePath) {
+        return filePath.endsWith(SNAPSHOT_EXTENSION);
+    }
 
     /**
      * Записывает коллекцию билетов в XML файл
+     * Коллекция сначала записывается во временный файл, который затем атомарно заменяет прежний,
+     * поэтому читатели файла никогда не видят его записанным наполовину
      * @param filePath путь к файлу для сохранения
      * @param collection коллекция билетов для сохранения
+     * @param nextId следующий свободный id, сохраняемый вместе с коллекцией
+     * @return true, если файл сохранен
      */
-    public void writeToFile(String filePath, Vector<Ticket> collection) {
-        try (PrintWriter writer = new PrintWriter(filePath)) {
+    public boolean writeToFile(String filePath, Vector<Ticket> collection, int nextId) {
+        Path target = Path.of(filePath);
+        Path temp = Path.of(filePath + ".tmp");
+        if (isSnapshot(filePath)) {
+            try {
+                writeSnapshot(temp, collection, nextId);
+            } catch (IOException e) {
+                System.out.println("Ошибка при записи в файл: " + e.getMessage());
+                return false;
+            }
+            return replace(temp, target);
+        }
+        try (PrintWriter writer = new PrintWriter(temp.toFile())) {
             // Записываем XML декларацию и корневой элемент
             writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-            writer.println("<tickets>");
+            writer.println("<tickets nextId=\"" + nextId + "\">");
 
             // Добавляем отступ для вложенных элементов
             String indent = "    ";
@@ -34,8 +72,42 @@ public class CollectionWriter {
             }
 
             writer.println("</tickets>");
+            if (writer.checkError()) {
+                throw new IOException("не удалось записать временный файл " + temp);
+            }
         } catch (Exception e) {
             System.out.println("Ошибка при записи в файл: " + e.getMessage());
+            return false;
+        }
+        return replace(temp, target);
+    }
+
+    /**
+     * Записывает коллекцию двоичным снимком: заголовок, следующий свободный id, количество билетов
+     * и билеты в формате {@link TicketCodec}
+     */
+    private void writeSnapshot(Path path, Vector<Ticket> collection, int nextId) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeByte(SNAPSHOT_VERSION);
+            TicketCodec.writeVarInt(out, nextId);
+            TicketCodec.writeVarInt(out, collection.size());
+            for (Ticket ticket : collection) {
+                TicketCodec.writeTicket(out, ticket);
+            }
+        }
+    }
+
+    /**
+     * Атомарно заменяет файл коллекции записанным временным файлом
+     */
+    private boolean replace(Path temp, Path target) {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Ошибка при записи в файл: " + e.getMessage());
+            return false;
         }
     }
 
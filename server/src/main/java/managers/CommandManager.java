@@ -1,18 +1,46 @@
 package managers;
 
 import commands.Command;
+import interfaces.Streamable;
 import mainClasses.Ticket;
 import things.Response;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 /**
  * Менеджер команд
  * Управляет регистрацией и выполнением команд
+ *
+ * Одинаковые команды чтения, пришедшие, пока такая же команда уже выполняется над той же версией коллекции,
+ * не выполняются заново, а дожидаются результата первой и получают его копию; при передаче результата частями
+ * первая команда запоминает переданные части, а присоединившиеся передают их своим клиентам
+ * Команда никогда не ждет результата, который должен получить ее же поток, поэтому совмещение не приводит к взаимной блокировке
  */
 public class CommandManager {
     private final Map<String, Command> commands = new HashMap<>();
+    /** Выполняющиеся команды чтения по имени команды, версии коллекции и аргументам */
+    private final Map<List<Object>, InFlight<Response>> inFlight = new ConcurrentHashMap<>();
+    /** Выполняющиеся с передачей частями команды чтения по имени команды, версии коллекции и аргументам */
+    private final Map<List<Object>, InFlight<List<String>>> streamsInFlight = new ConcurrentHashMap<>();
+    /**
+     * Наибольший размер в символах результата, который первая команда запоминает для присоединившихся
+     * Результат большего размера присоединившиеся команды получают, выполняясь сами
+     */
+    private static final long MAX_SHARED_STREAM_CHARS = 8L << 20;
+    /** Количество команд чтения, получивших результат уже выполнявшейся команды */
+    private final LongAdder coalesced = new LongAdder();
+    /** Хеш таблицы команд, сообщаемый клиентам при рукопожатии */
+    private volatile int commandTableHash;
 
     /**
      * Регистрирует новую команду
@@ -20,6 +48,21 @@ public class CommandManager {
      */
     public void registerCommand(Command command) {
         commands.put(command.getName(), command);
+        StringBuilder table = new StringBuilder();
+        for (Command registered : new TreeMap<>(commands).values()) {
+            table.append(registered.getName()).append(':').append(registered.getCommandType())
+                    .append(':').append(registered.needArgs).append(':').append(registered.getLane()).append(';');
+        }
+        commandTableHash = table.toString().hashCode();
+    }
+
+    /**
+     * Возвращает хеш таблицы команд: имен, типов, обязательности аргументов и очередей выполнения
+     * Клиент сравнивает его при переподключении, чтобы заметить, что набор команд сервера изменился
+     * @return хеш таблицы команд
+     */
+    public int getCommandTableHash() {
+        return commandTableHash;
     }
 
     /**
@@ -30,12 +73,49 @@ public class CommandManager {
      */
     public Response executeCommand(String commandName, String[] args, CollectionManager collectionManager) {
         Command command = commands.get(commandName);
-        if (command != null) {
-            String message = command.execute(args, collectionManager);
-            return new Response(Response.ResponseType.INFO, true, message);
-        } else {
+        if (command == null) {
             return new Response(Response.ResponseType.INFO, false, "Неизвестная команда");
         }
+        if (!command.isCoalescable()) {
+            return new Response(Response.ResponseType.INFO, true, command.execute(args, collectionManager));
+        }
+        // Версия читается до выполнения: результат первой команды получен не раньше, чем пришла присоединившаяся,
+        // а пока версия не изменилась, коллекция с ее прихода осталась прежней
+        List<Object> key = Arrays.asList(commandName, collectionManager.getVersion(), Arrays.asList(args));
+        InFlight<Response> result = new InFlight<>();
+        InFlight<Response> running = inFlight.putIfAbsent(key, result);
+        if (running != null && running.owner == Thread.currentThread()) {
+            // Такая же команда выполняется ниже по стеку этого же потока: ее результата не дождаться
+            return new Response(Response.ResponseType.INFO, true, command.execute(args, collectionManager));
+        }
+        if (running != null) {
+            coalesced.increment();
+            try {
+                // Ответ отправляется со своим идентификатором запроса, поэтому каждый получает копию
+                Response shared = running.result.join();
+                return new Response(shared.getType(), shared.isSuccess(), shared.getMessage());
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            Response response = new Response(Response.ResponseType.INFO, true, command.execute(args, collectionManager));
+            result.result.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            result.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, result);
+        }
+    }
+
+    /**
+     * Возвращает количество команд чтения, получивших результат уже выполнявшейся одинаковой команды
+     * @return количество совмещенных команд
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
     }
 
     public Response executeCommand(String commandName, String[] args, CollectionManager collectionManager, Ticket ticket) {
@@ -48,6 +128,72 @@ public class CommandManager {
         }
     }
 
+    /**
+     * Выполняет команду, передавая ее результат частями в приемник
+     * Команды, не умеющие передавать результат частями, отдают его целиком одной частью
+     * Если такая же команда уже выполняется над той же версией коллекции, ее части передаются в приемник
+     * после ее завершения; если она завершилась ошибкой или ее результат слишком велик, команда выполняется заново
+     * @param commandName имя команды
+     * @param args аргументы команды
+     * @param collectionManager менеджер коллекции
+     * @param out приемник частей результата
+     * @return true, если команда найдена и выполнена
+     */
+    public boolean streamCommand(String commandName, String[] args, CollectionManager collectionManager, Consumer<String> out) {
+        Command command = commands.get(commandName);
+        if (command == null) {
+            return false;
+        }
+        if (!command.isCoalescable()) {
+            stream(command, args, collectionManager, out);
+            return true;
+        }
+        List<Object> key = Arrays.asList(commandName, collectionManager.getVersion(), Arrays.asList(args));
+        InFlight<List<String>> result = new InFlight<>();
+        InFlight<List<String>> running = streamsInFlight.putIfAbsent(key, result);
+        if (running != null) {
+            // Первая команда выполняется ниже по стеку этого же потока, и ее результата не дождаться
+            List<String> parts = running.owner == Thread.currentThread() ? null : running.result.join();
+            if (parts != null) {
+                coalesced.increment();
+                parts.forEach(out);
+            } else {
+                stream(command, args, collectionManager, out);
+            }
+            return true;
+        }
+        // Части запоминаются до передачи в приемник: ошибка отправки первому клиенту не лишает результата остальных
+        List<String> parts = new ArrayList<>();
+        long[] chars = {0};
+        try {
+            stream(command, args, collectionManager, part -> {
+                if (chars[0] <= MAX_SHARED_STREAM_CHARS) {
+                    chars[0] += part.length();
+                    if (chars[0] <= MAX_SHARED_STREAM_CHARS) {
+                        parts.add(part);
+                    } else {
+                        parts.clear();
+                    }
+                }
+                out.accept(part);
+            });
+            result.result.complete(chars[0] <= MAX_SHARED_STREAM_CHARS ? parts : null);
+            return true;
+        } finally {
+            // Присоединившиеся команды не получают ошибку первой, а выполняются сами
+            result.result.complete(null);
+            streamsInFlight.remove(key, result);
+        }
+    }
+
+    private static void stream(Command command, String[] args, CollectionManager collectionManager, Consumer<String> out) {
+        if (command instanceof Streamable) {
+            ((Streamable) command).stream(args, collectionManager, out);
+        } else {
+            out.accept(command.execute(args, collectionManager));
+        }
+    }
+
     /**
      * Получает все зарегистрированные команды
      * @return карта команд, где ключ - имя команды
@@ -55,6 +201,12 @@ public class CommandManager {
     public Map<String, Command> getCommands() {
         return commands;
     }
-}
-
 
+    /**
+     * Выполняющаяся команда чтения: поток, который ее выполняет, и ее будущий результат
+     */
+    private static final class InFlight<T> {
+        private final Thread owner = Thread.currentThread();
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+    }
+}
@@ -0,0 +1,189 @@
+package managers;
+
+import mainClasses.Ticket;
+
+import java.util.Arrays;
+
+/**
+ * Индекс билетов по идентификатору
+ * Хеш-таблица с открытой адресацией и линейным пробированием на массиве ключей типа int,
+ * поэтому поиск не упаковывает идентификаторы и не создает узлов; пустая ячейка отмечается отсутствием билета
+ * Вместе с билетом хранится его порядковый ключ: ключи возрастают вдоль коллекции, поэтому позицию билета
+ * в коллекции можно найти двоичным поиском
+ * Класс не потокобезопасен, доступ к нему защищается блокировкой коллекции
+ */
+public class TicketIdIndex {
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] keys;
+    private Ticket[] values;
+    private long[] orders;
+    private int size;
+
+    /**
+     * Создает пустой индекс
+     */
+    public TicketIdIndex() {
+        keys = new int[MIN_CAPACITY];
+        values = new Ticket[MIN_CAPACITY];
+        orders = new long[MIN_CAPACITY];
+    }
+
+    /**
+     * Возвращает билет с указанным идентификатором
+     * @param id идентификатор
+     * @return билет или null, если его нет в индексе
+     */
+    public Ticket get(int id) {
+        int slot = find(id);
+        return slot < 0 ? null : values[slot];
+    }
+
+    /**
+     * Возвращает порядковый ключ билета
+     * @param id идентификатор
+     * @return порядковый ключ
+     * @throws IllegalArgumentException если билета нет в индексе
+     */
+    public long getOrder(int id) {
+        int slot = find(id);
+        if (slot < 0) {
+            throw new IllegalArgumentException("Билет с id = " + id + " отсутствует в индексе");
+        }
+        return orders[slot];
+    }
+
+    /**
+     * Меняет порядковый ключ билета
+     * @param id идентификатор
+     * @param order новый порядковый ключ
+     * @throws IllegalArgumentException если билета нет в индексе
+     */
+    public void setOrder(int id, long order) {
+        int slot = find(id);
+        if (slot < 0) {
+            throw new IllegalArgumentException("Билет с id = " + id + " отсутствует в индексе");
+        }
+        orders[slot] = order;
+    }
+
+    /**
+     * Добавляет билет в индекс, заменяя билет с тем же идентификатором
+     * @param id идентификатор
+     * @param ticket билет
+     * @param order порядковый ключ билета
+     * @return замененный билет или null
+     */
+    public Ticket put(int id, Ticket ticket, long order) {
+        if (ticket == null) {
+            throw new IllegalArgumentException("Билет не может быть null");
+        }
+        // Заполненность не выше половины, чтобы цепочки пробирования оставались короткими
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int slot = slot(id, mask);
+        while (values[slot] != null) {
+            if (keys[slot] == id) {
+                Ticket previous = values[slot];
+                values[slot] = ticket;
+                orders[slot] = order;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = id;
+        values[slot] = ticket;
+        orders[slot] = order;
+        size++;
+        return null;
+    }
+
+    /**
+     * Удаляет билет из индекса
+     * Следующие за освободившейся ячейкой элементы цепочки сдвигаются назад, поэтому удаление не оставляет меток
+     * @param id идентификатор
+     * @return удаленный билет или null, если его не было в индексе
+     */
+    public Ticket remove(int id) {
+        int slot = find(id);
+        if (slot < 0) return null;
+        Ticket removed = values[slot];
+        int mask = keys.length - 1;
+        int gap = slot;
+        for (int next = (gap + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+            int home = slot(keys[next], mask);
+            // Элемент можно перенести в пустую ячейку, если она лежит между его исходной ячейкой и текущей
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                orders[gap] = orders[next];
+                gap = next;
+            }
+        }
+        values[gap] = null;
+        size--;
+        return removed;
+    }
+
+    /**
+     * Удаляет все билеты из индекса, возвращая таблице начальный размер
+     */
+    public void clear() {
+        if (keys.length == MIN_CAPACITY) {
+            Arrays.fill(values, null);
+        } else {
+            keys = new int[MIN_CAPACITY];
+            values = new Ticket[MIN_CAPACITY];
+            orders = new long[MIN_CAPACITY];
+        }
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Ticket[] oldValues = values;
+        long[] oldOrders = orders;
+        keys = new int[capacity];
+        values = new Ticket[capacity];
+        orders = new long[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] == null) continue;
+            int slot = slot(oldKeys[i], mask);
+            while (values[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+            orders[slot] = oldOrders[i];
+        }
+    }
+
+    /**
+     * Находит ячейку билета
+     * @return номер ячейки или -1, если билета нет в индексе
+     */
+    private int find(int id) {
+        int mask = keys.length - 1;
+        for (int slot = slot(id, mask); values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == id) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Перемешивает биты идентификатора, чтобы идентификаторы с одинаковыми младшими битами не попадали в одну цепочку
+     */
+    private static int slot(int id, int mask) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,76 @@
+package network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+
+/**
+ * Поток приема подключений на собственном селекторе
+ * Если ядро поддерживает SO_REUSEPORT, у каждого потока свои серверные каналы и ядро само
+ * распределяет между ними входящие подключения; иначе потоки разбирают подключения из общих каналов
+ */
+public class Acceptor implements Runnable {
+    private static final Logger logger = LogManager.getLogger(Acceptor.class);
+
+    private final TCPServer server;
+    private final Selector selector;
+    private volatile boolean running = true;
+
+    /**
+     * Создает поток приема и подписывается на подключения к переданным каналам
+     * @param server сервер, которому передаются принятые подключения
+     * @param channels неблокирующие серверные каналы
+     * @throws IOException если не удалось открыть селектор
+     */
+    public Acceptor(TCPServer server, List<ServerSocketChannel> channels) throws IOException {
+        this.server = server;
+        this.selector = Selector.open();
+        for (ServerSocketChannel channel : channels) {
+            channel.register(selector, SelectionKey.OP_ACCEPT, channel);
+        }
+    }
+
+    /**
+     * Останавливает прием; сами каналы закрывает сервер
+     */
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+                long readyAt = System.nanoTime();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    ServerSocketChannel channel = (ServerSocketChannel) key.attachment();
+                    SocketChannel clientChannel;
+                    // Общий канал могут одновременно разбирать несколько потоков, тогда accept вернет null
+                    while (key.isValid() && (clientChannel = channel.accept()) != null) {
+                        server.admit(clientChannel, readyAt);
+                    }
+                }
+                selector.selectedKeys().clear();
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (IOException e) {
+                if (!running) break;
+                logger.error("Ошибка при приеме подключения: {}", e.getMessage());
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.error("Ошибка закрытия селектора: {}", e.getMessage());
+        }
+    }
+}
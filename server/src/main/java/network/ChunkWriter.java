@@ -0,0 +1,129 @@
+package network;
+
+import things.Request;
+import things.Response;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Приемник частей большого результата, отправляющий их клиенту ответами ограниченного размера
+ * В памяти одновременно находится не больше одной части результата; для кэша ответов дополнительно запоминаются
+ * отправленные кадры, но только пока их суммарный размер не превысил небольшой предел
+ */
+public class ChunkWriter implements Consumer<String> {
+    private final Request request;
+    private final ClientSession session;
+    /** Максимальное количество символов в одной части */
+    private final int chunkSize;
+    private final StringBuilder buffer = new StringBuilder();
+    /** Количество отправленных частей */
+    private int chunks;
+    /** Отправленные кадры для кэша ответов, null если они не запоминаются */
+    private List<EncodedResponse> recorded;
+    /** Наибольший суммарный размер запоминаемых кадров в байтах */
+    private long recordLimit;
+    private long recordedBytes;
+
+    /**
+     * Создает приемник для ответа на указанный запрос
+     * @param request запрос клиента
+     * @param session сеанс клиента
+     * @param chunkSize максимальное количество символов в одной части
+     */
+    public ChunkWriter(Request request, ClientSession session, int chunkSize) {
+        this.request = request;
+        this.session = session;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Включает запоминание отправленных кадров, чтобы ответ можно было положить в кэш
+     * Если кадры превысят указанный объем, запоминание прекращается и запомненные кадры освобождаются
+     * @param limitBytes наибольший суммарный размер запоминаемых кадров в байтах
+     */
+    public void record(long limitBytes) {
+        recorded = new ArrayList<>();
+        recordLimit = limitBytes;
+    }
+
+    /**
+     * Возвращает отправленные кадры, включая признак окончания
+     * @return кадры в порядке отправки или null, если запоминание не включалось или было прекращено
+     */
+    public List<EncodedResponse> getRecorded() {
+        return recorded;
+    }
+
+    /**
+     * Добавляет часть результата, отправляя клиенту каждую заполненную часть
+     * @param part часть результата
+     * @throws UncheckedIOException если возникла ошибка при отправке
+     */
+    @Override
+    public void accept(String part) {
+        int offset = 0;
+        while (offset < part.length()) {
+            int end = Math.min(part.length(), offset + chunkSize - buffer.length());
+            // Суррогатная пара не должна разрываться между двумя частями
+            if (end < part.length() && end > offset && Character.isHighSurrogate(part.charAt(end - 1))) {
+                end--;
+            }
+            if (end == offset) {
+                flushChunk();
+                continue;
+            }
+            buffer.append(part, offset, end);
+            offset = end;
+            if (buffer.length() >= chunkSize) {
+                flushChunk();
+            }
+        }
+    }
+
+    /**
+     * Отправляет оставшуюся часть результата и признак его окончания
+     * @throws IOException если возникла ошибка при отправке
+     */
+    public void finish() throws IOException {
+        try {
+            if (buffer.length() > 0) {
+                flushChunk();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        send(new Response(Response.ResponseType.END_OF_CONTENT, true, null));
+    }
+
+    public int getChunks() {
+        return chunks;
+    }
+
+    private void flushChunk() {
+        Response response = new Response(Response.ResponseType.CHUNK, true, buffer.toString());
+        buffer.setLength(0);
+        try {
+            send(response);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        chunks++;
+    }
+
+    private void send(Response response) throws IOException {
+        EncodedResponse encoded = session.encode(response);
+        if (recorded != null) {
+            recordedBytes += encoded.getPayload().length;
+            if (recordedBytes > recordLimit) {
+                recorded = null;
+            } else {
+                recorded.add(encoded);
+            }
+        }
+        session.send(request.getRequestId(), encoded);
+    }
+}
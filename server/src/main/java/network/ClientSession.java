@@ -0,0 +1,490 @@
+package network;
+
+import exceptions.SlowConsumerException;
+import protocol.Compression;
+import protocol.Frames;
+import protocol.Handshake;
+import protocol.WireCodec;
+import things.Request;
+import things.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Сеанс работы с одним клиентом
+ * Хранит состояние обмена, не зависящее от способа ввода/вывода
+ *
+ * Исходящие кадры не пишутся в сокет потоком, выполняющим команду, а ставятся в очередь сеанса.
+ * Когда объем очереди превышает верхнюю границу, чтение запросов клиента приостанавливается,
+ * а потоки, отправляющие новые ответы, ждут, пока очередь не опустится ниже нижней границы.
+ * Если клиент так и не начал читать, соединение закрывается
+ */
+public abstract class ClientSession {
+    /** Наибольшая длина участка файла, передаваемого одним кадром */
+    private static final int FILE_REGION_SIZE = 1024 * 1024;
+    /** Запас на заголовок закодированной части результата сверх ее текста в байтах */
+    private static final int CHUNK_OVERHEAD = 512;
+    /** Настройки сервера, задающие границы очереди исходящих кадров */
+    protected final ServerConfig config;
+    /** Адрес клиента, по которому учитывается предел подключений */
+    private final InetAddress remoteAddress;
+    /** Объем кадров в очереди, еще не записанных в сокет, в байтах */
+    private final AtomicLong queuedBytes = new AtomicLong();
+    /** Признак приостановленного чтения запросов, меняется только под блокировкой ожидания */
+    private volatile boolean readPaused;
+    /** Блокировка ожидания освобождения очереди; не synchronized, чтобы не закреплять виртуальный поток */
+    private final ReentrantLock drainLock = new ReentrantLock();
+    /** Условие, о котором сообщается, когда очередь опускается ниже нижней границы или сеанс закрывается */
+    private final Condition drained = drainLock.newCondition();
+    /** Запросы, ожидающие от клиента данных о билете, по идентификаторам запросов */
+    private final Map<Long, Request> pendingRequests = new ConcurrentHashMap<>();
+    /** Момент получения последнего кадра от клиента по System.nanoTime() */
+    private volatile long lastReadNanos = System.nanoTime();
+    /** Согласованный способ кодирования, null до завершения рукопожатия */
+    private volatile WireCodec codec;
+    /** Согласовано ли сжатие полезной нагрузки кадров */
+    private volatile boolean compression;
+    /** Согласована ли передача частей файлов кадрами без способа кодирования */
+    private volatile boolean fileTransfer;
+    /** Наибольший размер кадра, который принимает клиент */
+    private volatile int peerMaxFrameSize = Frames.MAX_FRAME_SIZE;
+    /** Ведро жетонов, ограничивающее частоту запросов этого соединения */
+    private final TokenBucket rateBucket;
+
+    /**
+     * Создает сеанс
+     * @param config настройки сервера
+     * @param remoteAddress адрес клиента
+     */
+    protected ClientSession(ServerConfig config, InetAddress remoteAddress) {
+        this.config = config;
+        this.remoteAddress = remoteAddress;
+        this.rateBucket = new TokenBucket(config.getRateBurstPerConnection(), config.getRateLimitPerConnection());
+    }
+
+    /**
+     * Определяет адрес клиента для учета пределов подключений
+     * Клиенты, подключенные через сокет Unix, находятся на том же узле и учитываются как локальный адрес
+     * @param channel канал клиента
+     * @return адрес клиента
+     * @throws IOException если канал уже закрыт
+     */
+    public static InetAddress peerAddress(SocketChannel channel) throws IOException {
+        SocketAddress address = channel.getRemoteAddress();
+        if (address instanceof InetSocketAddress inet) {
+            return inet.getAddress();
+        }
+        return InetAddress.getLoopbackAddress();
+    }
+
+    public InetAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    public TokenBucket getRateBucket() {
+        return rateBucket;
+    }
+
+    /**
+     * Отмечает, что от клиента получены данные
+     */
+    protected void touch() {
+        lastReadNanos = System.nanoTime();
+    }
+
+    /**
+     * Возвращает время, прошедшее с получения последних данных от клиента
+     * @return время бездействия в миллисекундах
+     */
+    public long getIdleMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastReadNanos);
+    }
+
+    /**
+     * Ставит кадр с готовой полезной нагрузкой в очередь на отправку клиенту
+     * После записи кадра в сокет реализация должна вызвать {@link #onFrameWritten(int)}
+     * @param id идентификатор запроса, на который отвечает кадр
+     * @param payload полезная нагрузка кадра
+     * @param compressed признак сжатой полезной нагрузки
+     * @throws IOException если соединение закрыто
+     */
+    protected abstract void writeFrame(long id, byte[] payload, boolean compressed) throws IOException;
+
+    /**
+     * Ставит участок файла в очередь на отправку клиенту
+     * После передачи участка реализация должна вызвать {@link #onFrameWritten(int)} и {@link FileRegion#release()}
+     * @param region участок файла
+     * @throws IOException если соединение закрыто
+     */
+    protected abstract void writeRegion(FileRegion region) throws IOException;
+
+    /**
+     * Приостанавливает чтение запросов клиента
+     */
+    protected void pauseReading() {}
+
+    /**
+     * Возобновляет чтение запросов клиента
+     */
+    protected void resumeReading() {}
+
+    /**
+     * Ставит ответ в очередь на отправку клиенту с идентификатором запроса из самого ответа
+     * Если сжатие согласовано, а ответ не меньше порога сжатия, ответ отправляется сжатым
+     * Если очередь переполнена, ждет ее освобождения не дольше заданного в настройках времени
+     * @param response ответ для отправки
+     * @throws SlowConsumerException если клиент не читает ответы и соединение закрыто
+     * @throws IOException если соединение закрыто
+     */
+    public void send(Response response) throws IOException {
+        send(response.getRequestId(), encode(response));
+    }
+
+    /**
+     * Кодирует ответ способом кодирования соединения, сжимая его, если сжатие согласовано,
+     * а ответ не меньше порога сжатия
+     * @param response ответ
+     * @return закодированный ответ
+     * @throws IOException если ответ не удалось закодировать
+     */
+    public EncodedResponse encode(Response response) throws IOException {
+        byte[] payload = codec.encodeResponse(response);
+        if (compression && payload.length >= config.getCompressionThreshold()) {
+            byte[] packed = Compression.deflate(payload);
+            if (packed.length < payload.length) {
+                return new EncodedResponse(packed, true, payload.length);
+            }
+        }
+        return new EncodedResponse(payload);
+    }
+
+    /**
+     * Ставит закодированный ответ в очередь на отправку клиенту
+     * Если очередь переполнена, ждет ее освобождения не дольше заданного в настройках времени
+     * @param requestId идентификатор запроса
+     * @param response ответ, закодированный {@link #encode(Response)} этого или такого же соединения
+     * @throws SlowConsumerException если клиент не читает ответы и соединение закрыто
+     * @throws IOException если соединение закрыто
+     */
+    public void send(long requestId, EncodedResponse response) throws IOException {
+        byte[] payload = response.getPayload();
+        boolean compressed = response.isCompressed();
+        if (response.getContentLength() > peerMaxFrameSize) {
+            // Клиент не примет такой кадр или не распакует его, поэтому вместо ответа отправляется объяснение
+            Response error = new Response(Response.ResponseType.ERROR, false, "Ответ размером " + response.getContentLength()
+                    + " байт превышает наибольший размер кадра клиента " + peerMaxFrameSize + " байт");
+            payload = codec.encodeResponse(error);
+            compressed = false;
+        }
+        awaitCapacity();
+        enqueue(requestId, payload, compressed);
+    }
+
+    /**
+     * Ставит ответ в очередь, не дожидаясь освобождения места
+     * Используется потоками, которые не должны блокироваться, для коротких служебных ответов
+     * @param response ответ для отправки
+     * @throws IOException если соединение закрыто
+     */
+    public void offer(Response response) throws IOException {
+        enqueue(response.getRequestId(), codec.encodeResponse(response), false);
+    }
+
+    /**
+     * Ставит содержимое файла в очередь на отправку клиенту кадрами частей файла
+     * Файл передается в сокет без копирования в кучу и закрывается после передачи последней части
+     * или при ошибке; между частями, как и между обычными ответами, соблюдается противодавление
+     * @param requestId идентификатор запроса
+     * @param file открытый для чтения файл
+     * @param size количество передаваемых байт от начала файла
+     * @throws SlowConsumerException если клиент не читает ответы и соединение закрыто
+     * @throws IOException если соединение закрыто
+     */
+    public void sendFile(long requestId, FileChannel file, long size) throws IOException {
+        if (size == 0) {
+            file.close();
+            return;
+        }
+        try {
+            for (long position = 0; position < size; ) {
+                int count = (int) Math.min(Math.min(FILE_REGION_SIZE, peerMaxFrameSize), size - position);
+                FileRegion region = new FileRegion(requestId, file, position, count, position + count >= size);
+                awaitCapacity();
+                long queued = queuedBytes.addAndGet(region.size());
+                try {
+                    writeRegion(region);
+                } catch (IOException e) {
+                    queuedBytes.addAndGet(-region.size());
+                    throw e;
+                }
+                if (queued > config.getHighWatermark() && config.getOverflowPolicy() == OverflowPolicy.PAUSE) {
+                    pause();
+                }
+                position += count;
+            }
+        } catch (IOException e) {
+            // Уже поставленные части передать не удастся: соединение закрыто
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Ждет, пока все поставленные в очередь кадры не будут записаны в сокет
+     * @param deadline момент по System.nanoTime(), после которого ожидание прекращается
+     * @return true, если очередь опустела до срока
+     */
+    public boolean awaitFlushed(long deadline) {
+        while (queuedBytes.get() > 0 && !isClosed()) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Учитывает кадр в объеме очереди и передает его реализации
+     */
+    private void enqueue(long id, byte[] payload, boolean compressed) throws IOException {
+        int size = Frames.HEADER_SIZE + payload.length;
+        long queued = queuedBytes.addAndGet(size);
+        try {
+            writeFrame(id, payload, compressed);
+        } catch (IOException e) {
+            queuedBytes.addAndGet(-size);
+            throw e;
+        }
+        if (queued > config.getHighWatermark() && config.getOverflowPolicy() == OverflowPolicy.PAUSE) {
+            pause();
+        }
+    }
+
+    /**
+     * Ждет, пока в очереди не освободится место
+     * @throws SlowConsumerException если место не освободилось вовремя или политика требует закрыть соединение
+     * @throws IOException если соединение закрыто
+     */
+    private void awaitCapacity() throws IOException {
+        if (queuedBytes.get() <= config.getHighWatermark()) {
+            return;
+        }
+        if (config.getOverflowPolicy() == OverflowPolicy.DISCONNECT) {
+            close();
+            throw new SlowConsumerException("Клиент не успевает читать ответы, в очереди " + queuedBytes.get() + " байт");
+        }
+        pause();
+        long remaining = TimeUnit.MILLISECONDS.toNanos(config.getWriteTimeoutMillis());
+        drainLock.lock();
+        try {
+            while (queuedBytes.get() > config.getLowWatermark()) {
+                if (isClosed()) {
+                    throw new IOException("Соединение с клиентом закрыто");
+                }
+                if (remaining <= 0) {
+                    close();
+                    throw new SlowConsumerException("Клиент не читает ответы дольше "
+                            + config.getWriteTimeoutMillis() + " мс, в очереди " + queuedBytes.get() + " байт");
+                }
+                remaining = drained.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Ожидание освобождения очереди прервано");
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    /**
+     * Приостанавливает чтение, если очередь все еще выше нижней границы
+     */
+    private void pause() {
+        drainLock.lock();
+        try {
+            if (!readPaused && queuedBytes.get() > config.getLowWatermark()) {
+                readPaused = true;
+                pauseReading();
+            }
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    /**
+     * Сообщает, что кадр записан в сокет, и снимает противодавление, если очередь освободилась
+     * @param size размер кадра вместе с заголовком
+     */
+    protected void onFrameWritten(int size) {
+        long queued = queuedBytes.addAndGet(-size);
+        if (queued > config.getLowWatermark() || !readPaused) {
+            return;
+        }
+        drainLock.lock();
+        try {
+            if (readPaused && queuedBytes.get() <= config.getLowWatermark()) {
+                readPaused = false;
+                resumeReading();
+                drained.signalAll();
+            }
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    /**
+     * Очищает очередь исходящих данных закрытого соединения, закрывая файлы непереданных участков
+     * @param outbound очередь кадров и участков файлов
+     */
+    protected static void releaseRegions(Queue<Object> outbound) {
+        Object item;
+        while ((item = outbound.poll()) != null) {
+            if (item instanceof FileRegion region) {
+                region.release();
+            }
+        }
+    }
+
+    /**
+     * Будит потоки, ожидающие освобождения очереди или возобновления чтения
+     * Реализация вызывает этот метод при закрытии соединения
+     */
+    protected void wakeWaiters() {
+        drainLock.lock();
+        try {
+            drained.signalAll();
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    /**
+     * Блокируется, пока чтение запросов приостановлено из-за переполненной очереди
+     * @throws InterruptedIOException если ожидание прервано
+     */
+    protected void awaitReadingResumed() throws InterruptedIOException {
+        drainLock.lock();
+        try {
+            while (readPaused && !isClosed()) {
+                drained.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Ожидание возобновления чтения прервано");
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    /**
+     * Возвращает объем кадров, ожидающих записи в сокет
+     * @return объем очереди в байтах
+     */
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    /**
+     * Разбирает рукопожатие клиента, отвечает на него и запоминает выбранный способ кодирования,
+     * согласованные дополнительные возможности и наибольший размер кадра клиента
+     * Клиенту более старой версии протокола отвечает рукопожатием его версии
+     * @param payload полезная нагрузка первого кадра клиента
+     * @param commandHash хеш таблицы команд сервера
+     * @throws IOException если кадр не является рукопожатием или общего способа кодирования нет
+     */
+    public void completeHandshake(byte[] payload, int commandHash) throws IOException {
+        Handshake hello = Handshake.fromBytes(payload);
+        if (hello.getProtocolVersion() < Handshake.MIN_PROTOCOL_VERSION) {
+            throw new IOException("Неподдерживаемая версия протокола: " + hello.getProtocolVersion());
+        }
+        byte version = (byte) Math.min(hello.getProtocolVersion(), Handshake.PROTOCOL_VERSION);
+        WireCodec selected = hello.selectCodec();
+        if (selected == null) {
+            throw new IOException("Нет общего способа кодирования с клиентом");
+        }
+        boolean compress = config.isCompression() && hello.hasFeature(Handshake.FEATURE_COMPRESSION);
+        boolean files = version >= 2 && hello.hasFeature(Handshake.FEATURE_FILE_TRANSFER);
+        byte features = (byte) ((compress ? Handshake.FEATURE_COMPRESSION : 0) | (files ? Handshake.FEATURE_FILE_TRANSFER : 0));
+        Handshake reply = new Handshake(selected.getId()).withVersion(version).withFeatures(features)
+                .withLimits(config.getMaxFrameSize(), commandHash);
+        enqueue(0, reply.toBytes(), false);
+        peerMaxFrameSize = Math.max(Frames.HEADER_SIZE, hello.getMaxFrameSize());
+        compression = compress;
+        fileTransfer = files;
+        codec = selected;
+    }
+
+    /**
+     * Возвращает количество символов в одной части большого результата
+     * Символ занимает в UTF-8 до трех байт, поэтому для клиента с небольшим наибольшим размером кадра
+     * части уменьшаются так, чтобы закодированная часть поместилась в его кадр и без сжатия
+     * @return количество символов в части
+     */
+    public int getChunkSize() {
+        return Math.max(1, Math.min(config.getChunkSize(), (peerMaxFrameSize - CHUNK_OVERHEAD) / 3));
+    }
+
+    /**
+     * Возвращает согласованный способ кодирования
+     * @return способ кодирования или null, если рукопожатие еще не завершено
+     */
+    public WireCodec getCodec() {
+        return codec;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public boolean isFileTransfer() {
+        return fileTransfer;
+    }
+
+    /**
+     * Закрывает соединение с клиентом
+     * @throws IOException если возникла ошибка при закрытии
+     */
+    public abstract void close() throws IOException;
+
+    /**
+     * Проверяет, закрыто ли соединение с клиентом
+     * @return true, если соединение закрыто
+     */
+    public abstract boolean isClosed();
+
+    /**
+     * Запоминает команду, для выполнения которой нужны данные о билете
+     * @param request исходный запрос клиента
+     */
+    public void setPendingRequest(Request request) {
+        pendingRequests.put(request.getRequestId(), request);
+    }
+
+    /**
+     * Возвращает и забывает команду, ожидающую данных о билете
+     * @param requestId идентификатор исходного запроса
+     * @return исходный запрос или null, если его нет
+     */
+    public Request takePendingRequest(long requestId) {
+        return pendingRequests.remove(requestId);
+    }
+}
@@ -0,0 +1,144 @@
+package network;
+
+import commands.Command;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Распределитель запросов по очередям выполнения
+ * У каждой очереди свой пул потоков, поэтому дешевые чтения не ждут за сортировкой всей коллекции,
+ * а изменения коллекции выполняются одним потоком по порядку поступления
+ */
+public class CommandDispatcher {
+    private final Map<Command.Lane, Lane> lanes = new EnumMap<>(Command.Lane.class);
+
+    /**
+     * Создает очереди выполнения
+     * @param config настройки сервера, задающие размеры пулов и вид потоков
+     */
+    public CommandDispatcher(ServerConfig config) {
+        boolean virtual = config.getMode() == ServerMode.VIRTUAL;
+        lanes.put(Command.Lane.CHEAP_READ, new Lane("cheap", config.getCheapWorkerThreads(), virtual));
+        lanes.put(Command.Lane.HEAVY_READ, new Lane("heavy", config.getWorkerThreads(), virtual));
+        lanes.put(Command.Lane.MUTATION, new Lane("mutation", 1, virtual));
+    }
+
+    /**
+     * Ставит задачу в очередь выполнения
+     * @param lane очередь
+     * @param task задача
+     * @return false, если очередь уже остановлена и задача не принята
+     */
+    public boolean submit(Command.Lane lane, Runnable task) {
+        return lanes.get(lane).submit(task);
+    }
+
+    /**
+     * Возвращает количество задач, ожидающих выполнения в очереди
+     * @param lane очередь
+     * @return количество ожидающих задач
+     */
+    public int getQueueDepth(Command.Lane lane) {
+        return lanes.get(lane).executor.getQueue().size();
+    }
+
+    /**
+     * Формирует отчет об очередях выполнения для администратора
+     * @return многострочный отчет
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder("Очереди выполнения команд:");
+        lanes.forEach((lane, executor) -> report.append("\n").append(lane).append(": ").append(executor.report()));
+        return report.toString();
+    }
+
+    /**
+     * Перестает принимать задачи и ждет завершения уже принятых
+     * Очередь дешевых чтений останавливается первой, потому что из нее запросы передаются в остальные очереди
+     * @param deadline момент по System.nanoTime(), после которого ожидание прекращается
+     * @return true, если все принятые задачи завершились до срока
+     */
+    public boolean drain(long deadline) {
+        try {
+            Lane cheap = lanes.get(Command.Lane.CHEAP_READ);
+            cheap.executor.shutdown();
+            boolean finished = cheap.executor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            lanes.values().forEach(lane -> lane.executor.shutdown());
+            for (Lane lane : lanes.values()) {
+                finished &= lane.executor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+            return finished;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Прерывает выполняющиеся задачи и отбрасывает ожидающие
+     */
+    public void shutdownNow() {
+        lanes.values().forEach(lane -> lane.executor.shutdownNow());
+    }
+
+    /**
+     * Очередь выполнения с собственным пулом потоков и показателями ожидания
+     */
+    private static class Lane {
+        private final ThreadPoolExecutor executor;
+        /** Количество задач, начавших выполнение */
+        private final LongAdder started = new LongAdder();
+        /** Суммарное время ожидания задач в очереди в наносекундах */
+        private final LongAdder waitNanos = new LongAdder();
+        /** Наибольшее время ожидания задачи в очереди в наносекундах */
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+
+        Lane(String name, int threads, boolean virtual) {
+            this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), threadFactory(name, virtual));
+        }
+
+        private static ThreadFactory threadFactory(String name, boolean virtual) {
+            if (virtual) {
+                return Thread.ofVirtual().name(name + "-", 0).factory();
+            }
+            AtomicInteger number = new AtomicInteger();
+            return task -> new Thread(task, name + "-" + number.getAndIncrement());
+        }
+
+        boolean submit(Runnable task) {
+            long queuedAt = System.nanoTime();
+            try {
+                executor.execute(() -> {
+                    long waited = System.nanoTime() - queuedAt;
+                    started.increment();
+                    waitNanos.add(waited);
+                    maxWaitNanos.accumulateAndGet(waited, Math::max);
+                    task.run();
+                });
+                return true;
+            } catch (RejectedExecutionException e) {
+                return false;
+            }
+        }
+
+        String report() {
+            long count = started.sum();
+            long averageMicros = count == 0 ? 0 : waitNanos.sum() / count / 1000;
+            return "потоков " + executor.getMaximumPoolSize()
+                    + ", в очереди " + executor.getQueue().size()
+                    + ", выполняется " + executor.getActiveCount()
+                    + ", выполнено " + executor.getCompletedTaskCount()
+                    + ", ожидание мкс: среднее " + averageMicros + ", наибольшее " + maxWaitNanos.get() / 1000;
+        }
+    }
+}
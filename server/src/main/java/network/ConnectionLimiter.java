@@ -0,0 +1,63 @@
+package network;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ограничитель количества одновременных подключений, общего и с одного адреса
+ */
+public class ConnectionLimiter {
+    private final int maxConnections;
+    private final int maxConnectionsPerAddress;
+    /** Количество занятых мест */
+    private final AtomicInteger connections = new AtomicInteger();
+    /** Количество подключений с каждого адреса; адреса без подключений удаляются */
+    private final Map<InetAddress, Integer> perAddress = new ConcurrentHashMap<>();
+
+    /**
+     * Создает ограничитель
+     * @param maxConnections наибольшее количество одновременных подключений
+     * @param maxConnectionsPerAddress наибольшее количество одновременных подключений с одного адреса
+     */
+    public ConnectionLimiter(int maxConnections, int maxConnectionsPerAddress) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerAddress = maxConnectionsPerAddress;
+    }
+
+    /**
+     * Пытается занять место для нового подключения
+     * @param address адрес клиента
+     * @return null, если место занято, иначе причина отказа
+     */
+    public String tryAcquire(InetAddress address) {
+        if (connections.incrementAndGet() > maxConnections) {
+            connections.decrementAndGet();
+            return "сервер перегружен, достигнут предел в " + maxConnections + " подключений";
+        }
+        boolean[] admitted = {false};
+        perAddress.compute(address, (key, count) -> {
+            int current = count == null ? 0 : count;
+            if (current >= maxConnectionsPerAddress) {
+                return count;
+            }
+            admitted[0] = true;
+            return current + 1;
+        });
+        if (!admitted[0]) {
+            connections.decrementAndGet();
+            return "превышен предел в " + maxConnectionsPerAddress + " подключений с одного адреса";
+        }
+        return null;
+    }
+
+    /**
+     * Освобождает место, занятое подключением
+     * @param address адрес клиента
+     */
+    public void release(InetAddress address) {
+        perAddress.computeIfPresent(address, (key, count) -> count > 1 ? count - 1 : null);
+        connections.decrementAndGet();
+    }
+}
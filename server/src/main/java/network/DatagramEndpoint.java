@@ -0,0 +1,129 @@
+package network;
+
+import commands.Command;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import protocol.Datagram;
+import protocol.WireCodec;
+import things.Request;
+import things.Response;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Прием коротких запросов по UDP
+ * Отвечает только на команды с коротким ответом из очереди дешевых чтений: они не меняют коллекцию, поэтому клиент
+ * может безопасно повторить запрос, не получив ответа, а ответ не намного больше запроса.
+ * Адрес отправителя датаграммы не проверяется, поэтому принимаются только двоичные форматы без сериализации Java,
+ * а на пакеты, которые не удалось разобрать, и на недоступные команды сервер не отвечает.
+ * Поток приема только разбирает пакеты, а команды выполняются в очереди дешевых чтений
+ */
+public class DatagramEndpoint implements Runnable {
+    private static final Logger logger = LogManager.getLogger(DatagramEndpoint.class);
+
+    private final DatagramChannel channel;
+    private final TCPServer server;
+    private final CommandDispatcher dispatcher;
+    private final ServerMetrics metrics;
+
+    /**
+     * Создает точку приема датаграмм
+     * @param channel привязанный блокирующий канал
+     * @param server сервер, выполняющий команды
+     * @param dispatcher очереди выполнения команд
+     * @param metrics показатели работы сервера
+     */
+    public DatagramEndpoint(DatagramChannel channel, TCPServer server, CommandDispatcher dispatcher, ServerMetrics metrics) {
+        this.channel = channel;
+        this.server = server;
+        this.dispatcher = dispatcher;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Прекращает прием датаграмм
+     */
+    public void shutdown() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.error("Ошибка закрытия канала датаграмм: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void run() {
+        ByteBuffer buffer = ByteBuffer.allocate(Datagram.MAX_SIZE);
+        while (channel.isOpen()) {
+            try {
+                buffer.clear();
+                SocketAddress sender = channel.receive(buffer);
+                buffer.flip();
+                Datagram datagram;
+                WireCodec codec;
+                try {
+                    datagram = Datagram.fromBuffer(buffer);
+                    codec = datagram.getCodec() == WireCodec.BINARY || datagram.getCodec() == WireCodec.BINARY_V2
+                            ? WireCodec.forId(datagram.getCodec()) : null;
+                    if (codec == null) {
+                        throw new IOException("Неизвестный способ кодирования " + datagram.getCodec());
+                    }
+                } catch (IOException e) {
+                    // На посторонние пакеты не отвечаем, чтобы не усиливать чужой трафик
+                    metrics.datagramDropped();
+                    logger.debug("Отброшена датаграмма от {}: {}", sender, e.getMessage());
+                    continue;
+                }
+                metrics.datagramReceived();
+                if (!dispatcher.submit(Command.Lane.CHEAP_READ, () -> answer(datagram, codec, sender))) {
+                    // Сервер останавливается; клиент не получит ответа и повторит запрос на другом сервере
+                    metrics.datagramDropped();
+                }
+            } catch (AsynchronousCloseException e) {
+                break;
+            } catch (IOException e) {
+                logger.error("Ошибка при приеме датаграммы: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Выполняет запрос из датаграммы и отправляет ответ отправителю
+     * Поврежденные запросы и запросы недоступных по UDP команд отбрасываются без ответа
+     * @param datagram полученная датаграмма
+     * @param codec способ кодирования, указанный в датаграмме
+     * @param sender адрес отправителя
+     */
+    private void answer(Datagram datagram, WireCodec codec, SocketAddress sender) {
+        try {
+            Request request;
+            try {
+                request = codec.decodeRequest(datagram.getPayload());
+            } catch (IOException | RuntimeException e) {
+                // Поврежденная датаграмма может вызвать при разборе не только ошибку ввода/вывода
+                metrics.datagramDropped();
+                logger.debug("Отброшена поврежденная датаграмма от {}: {}", sender, e.getMessage());
+                return;
+            }
+            Response response = server.executeReadOnly(request, ((InetSocketAddress) sender).getAddress());
+            if (response == null) {
+                metrics.datagramDropped();
+                logger.debug("Отброшен запрос {} по UDP от {}", request.getCommandName(), sender);
+                return;
+            }
+            byte[] payload = codec.encodeResponse(response);
+            if (Datagram.HEADER_SIZE + payload.length > Datagram.MAX_SIZE) {
+                payload = codec.encodeResponse(new Response(Response.ResponseType.ERROR, false,
+                        "Ответ не помещается в датаграмму, выполните команду через TCP подключение"));
+            }
+            channel.send(new Datagram(datagram.getCodec(), datagram.getId(), payload).toBuffer(), sender);
+        } catch (IOException e) {
+            logger.debug("Не удалось отправить ответ на датаграмму {}: {}", sender, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package network;
+
+/**
+ * Ответ, закодированный способом кодирования соединения и, возможно, сжатый
+ * Идентификатор запроса передается в заголовке кадра, поэтому один закодированный ответ
+ * можно отправить на разные запросы
+ */
+public class EncodedResponse {
+    private final byte[] payload;
+    private final boolean compressed;
+    /** Размер полезной нагрузки до сжатия */
+    private final int contentLength;
+
+    /**
+     * Создает несжатый закодированный ответ
+     * @param payload полезная нагрузка кадра
+     */
+    public EncodedResponse(byte[] payload) {
+        this(payload, false, payload.length);
+    }
+
+    /**
+     * Создает закодированный ответ
+     * @param payload полезная нагрузка кадра
+     * @param compressed признак сжатой полезной нагрузки
+     * @param contentLength размер полезной нагрузки до сжатия
+     */
+    public EncodedResponse(byte[] payload, boolean compressed, int contentLength) {
+        this.payload = payload;
+        this.compressed = compressed;
+        this.contentLength = contentLength;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public int getContentLength() {
+        return contentLength;
+    }
+}
@@ -0,0 +1,94 @@
+package network;
+
+import protocol.Frames;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Участок файла, ожидающий отправки клиенту одним кадром
+ * Тело кадра передается в сокет методом FileChannel.transferTo, поэтому байты файла не копируются в кучу;
+ * в памяти находится только заголовок кадра
+ */
+public class FileRegion {
+    private final FileChannel file;
+    private final ByteBuffer header;
+    /** Позиция следующего непереданного байта в файле */
+    private long position;
+    /** Количество еще не переданных байт участка */
+    private long remaining;
+    /** Полный размер кадра вместе с заголовком */
+    private final int size;
+    /** Закрыть ли файл после передачи участка; задается у последнего участка файла */
+    private final boolean last;
+
+    /**
+     * Создает участок файла
+     * @param id идентификатор запроса
+     * @param file открытый для чтения файл
+     * @param position начало участка в файле
+     * @param count длина участка, не больше максимального размера кадра
+     * @param last закрыть ли файл после передачи участка
+     * @throws IOException если длина участка превышает максимальный размер кадра
+     */
+    public FileRegion(long id, FileChannel file, long position, int count, boolean last) throws IOException {
+        this.file = file;
+        this.header = Frames.rawHeader(id, count);
+        this.position = position;
+        this.remaining = count;
+        this.size = Frames.HEADER_SIZE + count;
+        this.last = last;
+    }
+
+    /**
+     * Возвращает размер кадра для учета в объеме очереди исходящих кадров
+     * @return размер кадра в байтах
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Передает в канал столько участка, сколько канал принимает
+     * Неблокирующий канал может принять только часть участка, тогда метод вызывается повторно
+     * @param target канал клиента
+     * @return true, если участок передан полностью
+     * @throws IOException если возникла ошибка при чтении файла или записи в канал
+     */
+    public boolean transferTo(WritableByteChannel target) throws IOException {
+        if (header.hasRemaining()) {
+            target.write(header);
+            if (header.hasRemaining()) {
+                return false;
+            }
+        }
+        while (remaining > 0) {
+            long sent = file.transferTo(position, remaining, target);
+            if (sent <= 0) {
+                if (position >= file.size()) {
+                    throw new IOException("Файл снимка оказался короче ожидаемого");
+                }
+                return false;
+            }
+            position += sent;
+            remaining -= sent;
+        }
+        return true;
+    }
+
+    /**
+     * Освобождает участок после передачи или при закрытии соединения
+     * Файл закрывается вместе с последним участком
+     */
+    public void release() {
+        if (last) {
+            try {
+                file.close();
+            } catch (IOException ignored) {
+                // файл открыт только для чтения
+            }
+        }
+    }
+}
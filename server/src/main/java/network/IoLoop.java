@@ -0,0 +1,147 @@
+package network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import protocol.Frame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Цикл неблокирующего ввода/вывода на собственном селекторе
+ * Читает кадры клиентов, передает их серверу для выполнения в пуле потоков и записывает ответы
+ */
+public class IoLoop implements Runnable {
+    private static final Logger logger = LogManager.getLogger(IoLoop.class);
+    /** Размер общего буфера чтения */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final TCPServer server;
+    private final Selector selector;
+    /** Сеансы, ожидающие регистрации в селекторе */
+    private final Queue<NioSession> registrations = new ConcurrentLinkedQueue<>();
+    /** Сеансы, у которых появились кадры для записи */
+    private final Queue<NioSession> flushes = new ConcurrentLinkedQueue<>();
+    /** Общий для всех сеансов цикла буфер чтения, чтобы простаивающие клиенты не держали память */
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private volatile boolean running = true;
+
+    /**
+     * Создает цикл ввода/вывода
+     * @param server сервер, выполняющий полученные запросы
+     * @throws IOException если не удалось открыть селектор
+     */
+    public IoLoop(TCPServer server) throws IOException {
+        this.server = server;
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Передает сеанс циклу для регистрации его канала в селекторе
+     * @param session сеанс клиента
+     */
+    public void register(NioSession session) {
+        registrations.add(session);
+        selector.wakeup();
+    }
+
+    /**
+     * Просит цикл записать накопленные кадры сеанса
+     * @param session сеанс клиента
+     */
+    public void requestFlush(NioSession session) {
+        flushes.add(session);
+        selector.wakeup();
+    }
+
+    /**
+     * Прерывает ожидание селектора, чтобы он учел изменившиеся интересующие операции
+     */
+    public void wakeup() {
+        selector.wakeup();
+    }
+
+    /**
+     * Останавливает цикл
+     */
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+                processRegistrations();
+                processFlushes();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    NioSession session = (NioSession) key.attachment();
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            for (Frame frame : session.onReadable(readBuffer)) {
+                                if (session.getCodec() == null) {
+                                    server.handshake(session, frame.getPayload());
+                                } else {
+                                    server.dispatch(session, frame);
+                                }
+                            }
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            session.flush();
+                        }
+                    } catch (IOException | CancelledKeyException e) {
+                        // Ключ отменяется, когда сеанс закрывает поток обработчика, в том числе между проверками выше
+                        server.closeSession(session);
+                    } catch (RuntimeException e) {
+                        logger.error("Ошибка при обработке соединения: {}", e.toString());
+                        server.closeSession(session);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // Ошибка одного соединения или селектора не должна останавливать поток, обслуживающий остальные
+                logger.error("Ошибка в цикле ввода/вывода: {}", e.toString());
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.error("Ошибка закрытия селектора: {}", e.getMessage());
+        }
+    }
+
+    private void processRegistrations() {
+        NioSession session;
+        while ((session = registrations.poll()) != null) {
+            try {
+                session.setKey(session.getChannel().register(selector, SelectionKey.OP_READ, session));
+            } catch (ClosedChannelException | CancelledKeyException e) {
+                server.closeSession(session);
+            }
+        }
+    }
+
+    private void processFlushes() {
+        NioSession session;
+        while ((session = flushes.poll()) != null) {
+            if (session.isClosed()) continue;
+            try {
+                session.flush();
+            } catch (IOException | CancelledKeyException e) {
+                server.closeSession(session);
+            }
+        }
+    }
+}
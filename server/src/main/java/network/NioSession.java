@@ -0,0 +1,195 @@
+package network;
+
+import protocol.Frame;
+import protocol.Frames;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Сеанс клиента в неблокирующем режиме
+ * Собирает кадры из прочитанных байт и накапливает исходящие кадры до их записи потоком ввода/вывода
+ */
+public class NioSession extends ClientSession {
+    private final SocketChannel channel;
+    private final IoLoop loop;
+    /** Ключ регистрации канала в селекторе цикла ввода/вывода */
+    private SelectionKey key;
+    /** Буфер для заголовка текущего входящего кадра */
+    private final ByteBuffer header = ByteBuffer.allocate(Frames.HEADER_SIZE);
+    /** Буфер для тела текущего входящего кадра, null пока заголовок не прочитан */
+    private ByteBuffer body;
+    /** Идентификатор запроса из заголовка текущего входящего кадра */
+    private long frameId;
+    /** Признак сжатия из заголовка текущего входящего кадра */
+    private boolean frameCompressed;
+    /** Очередь кадров (ByteBuffer) и участков файлов (FileRegion), ожидающих записи в канал */
+    private final Queue<Object> outbound = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Создает сеанс для принятого неблокирующего канала
+     * @param channel канал клиента
+     * @param loop цикл ввода/вывода, обслуживающий канал
+     * @param config настройки сервера
+     * @throws IOException если канал уже закрыт
+     */
+    public NioSession(SocketChannel channel, IoLoop loop, ServerConfig config) throws IOException {
+        super(config, peerAddress(channel));
+        this.channel = channel;
+        this.loop = loop;
+    }
+
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Запоминает ключ регистрации канала, вызывается потоком ввода/вывода
+     * @param key ключ регистрации
+     */
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    /**
+     * Читает доступные данные из канала и выделяет из них полные кадры
+     * Вызывается только потоком ввода/вывода
+     * @param buffer общий буфер чтения цикла ввода/вывода
+     * @return список полностью полученных кадров
+     * @throws IOException если клиент закрыл соединение или прислал некорректный кадр
+     */
+    List<Frame> onReadable(ByteBuffer buffer) throws IOException {
+        List<Frame> frames = new ArrayList<>();
+        buffer.clear();
+        int read = channel.read(buffer);
+        if (read < 0) {
+            throw new IOException("Клиент закрыл соединение");
+        }
+        if (read > 0) {
+            touch();
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            if (body == null) {
+                transfer(buffer, header);
+                if (header.hasRemaining()) {
+                    break;
+                }
+                header.flip();
+                int field = header.getInt();
+                int length = field & Frames.LENGTH_MASK;
+                frameCompressed = Frames.isCompressed(field);
+                frameId = header.getLong();
+                header.clear();
+                Frames.checkLength(length, config.getMaxFrameSize());
+                body = ByteBuffer.allocate(length);
+            }
+            transfer(buffer, body);
+            if (!body.hasRemaining()) {
+                frames.add(new Frame(frameId, body.array(), frameCompressed));
+                body = null;
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * Копирует из источника столько байт, сколько помещается в приемник
+     */
+    private static void transfer(ByteBuffer source, ByteBuffer target) {
+        int count = Math.min(source.remaining(), target.remaining());
+        ByteBuffer slice = source.slice();
+        slice.limit(count);
+        target.put(slice);
+        source.position(source.position() + count);
+    }
+
+    @Override
+    protected void writeFrame(long id, byte[] payload, boolean compressed) throws IOException {
+        if (!channel.isOpen()) {
+            throw new IOException("Соединение с клиентом закрыто");
+        }
+        outbound.add(Frames.toBuffer(id, payload, compressed));
+        loop.requestFlush(this);
+    }
+
+    @Override
+    protected void writeRegion(FileRegion region) throws IOException {
+        if (!channel.isOpen()) {
+            throw new IOException("Соединение с клиентом закрыто");
+        }
+        outbound.add(region);
+        loop.requestFlush(this);
+    }
+
+    /**
+     * Записывает в канал накопленные кадры и участки файлов, пока канал их принимает
+     * Вызывается только потоком ввода/вывода
+     * @throws IOException если возникла ошибка при записи
+     */
+    void flush() throws IOException {
+        Object item;
+        while ((item = outbound.peek()) != null) {
+            if (item instanceof FileRegion region) {
+                if (!region.transferTo(channel)) {
+                    key.interestOpsOr(SelectionKey.OP_WRITE);
+                    return;
+                }
+                outbound.poll();
+                region.release();
+                onFrameWritten(region.size());
+                continue;
+            }
+            ByteBuffer buffer = (ByteBuffer) item;
+            channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                key.interestOpsOr(SelectionKey.OP_WRITE);
+                return;
+            }
+            outbound.poll();
+            onFrameWritten(buffer.limit());
+        }
+        if (key.isValid()) {
+            key.interestOpsAnd(~SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Перестает выбирать канал для чтения, пока клиент не вычитает накопившиеся ответы
+     */
+    @Override
+    protected void pauseReading() {
+        if (key != null && key.isValid()) {
+            key.interestOpsAnd(~SelectionKey.OP_READ);
+        }
+    }
+
+    @Override
+    protected void resumeReading() {
+        if (key != null && key.isValid()) {
+            key.interestOpsOr(SelectionKey.OP_READ);
+            loop.wakeup();
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return !channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            releaseRegions(outbound);
+            wakeWaiters();
+        }
+    }
+}
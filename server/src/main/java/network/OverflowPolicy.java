@@ -0,0 +1,26 @@
+package network;
+
+/**
+ * Перечисление способов реагировать на клиента, который не успевает читать ответы
+ */
+public enum OverflowPolicy {
+    /** Приостановить чтение запросов клиента до освобождения очереди исходящих кадров */
+    PAUSE,
+    /** Сразу закрыть соединение с клиентом */
+    DISCONNECT;
+
+    /**
+     * Определяет способ по его названию без учета регистра
+     * @param name название способа
+     * @return найденный способ
+     * @throws IllegalArgumentException если способа с таким названием нет
+     */
+    public static OverflowPolicy fromString(String name) {
+        for (OverflowPolicy policy : values()) {
+            if (policy.name().equalsIgnoreCase(name.trim())) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестная политика переполнения: " + name);
+    }
+}
@@ -0,0 +1,93 @@
+package network;
+
+import commands.Command;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ограничитель частоты запросов для каждого соединения и каждого адреса клиента
+ * Запрос стоит столько жетонов, сколько задано в настройках для его очереди выполнения,
+ * поэтому изменения и тяжелые чтения расходуют предел быстрее дешевых запросов
+ */
+public class RateLimiter {
+    private final ServerConfig config;
+    /** Ведра адресов клиентов; ведра, успевшие заполниться, удаляются */
+    private final Map<InetAddress, TokenBucket> perAddress = new ConcurrentHashMap<>();
+
+    /**
+     * Создает ограничитель
+     * @param config настройки сервера с пределами и стоимостями запросов
+     */
+    public RateLimiter(ServerConfig config) {
+        this.config = config;
+    }
+
+    public boolean isEnabled() {
+        return config.isRateLimiting();
+    }
+
+    /**
+     * Возвращает стоимость запроса в жетонах
+     * @param lane очередь выполнения запроса
+     * @return стоимость запроса
+     */
+    public int costOf(Command.Lane lane) {
+        switch (lane) {
+            case CHEAP_READ:
+                return config.getRateCostCheap();
+            case HEAVY_READ:
+                return config.getRateCostHeavy();
+            default:
+                return config.getRateCostMutation();
+        }
+    }
+
+    /**
+     * Забирает жетоны на запрос из ведра соединения и из ведра адреса клиента
+     * Если в одном из ведер жетонов не хватает, ни одно из них не расходуется
+     * @param connection ведро соединения или null для запросов без соединения
+     * @param address адрес клиента
+     * @param cost стоимость запроса
+     * @return 0, если запрос можно выполнять, иначе время в миллисекундах, через которое стоит повторить его
+     */
+    public long tryAcquire(TokenBucket connection, InetAddress address, int cost) {
+        if (!isEnabled()) return 0;
+        long wait = connection == null ? 0 : connection.tryConsume(cost);
+        if (wait > 0) {
+            return toMillis(wait);
+        }
+        // Жетоны забираются внутри compute, чтобы ведро не удалили между получением и расходом
+        long[] addressWait = {0};
+        perAddress.compute(address, (key, bucket) -> {
+            if (bucket == null) {
+                bucket = new TokenBucket(config.getRateBurstPerAddress(), config.getRateLimitPerAddress());
+            }
+            addressWait[0] = bucket.tryConsume(cost);
+            return bucket;
+        });
+        wait = addressWait[0];
+        if (wait > 0) {
+            if (connection != null) {
+                connection.refund(cost);
+            }
+            return toMillis(wait);
+        }
+        return 0;
+    }
+
+    /**
+     * Удаляет ведра адресов, от которых давно не было запросов
+     * Заполнившееся ведро ничем не отличается от нового, поэтому его удаление не ослабляет предел
+     */
+    public void evictIdle() {
+        for (InetAddress address : perAddress.keySet()) {
+            perAddress.computeIfPresent(address, (key, bucket) -> bucket.isFull() ? null : bucket);
+        }
+    }
+
+    private static long toMillis(long nanos) {
+        return Math.max(1, (nanos + 999_999) / 1_000_000);
+    }
+}
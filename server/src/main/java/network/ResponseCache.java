@@ -0,0 +1,129 @@
+package network;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Кэш закодированных ответов на команды чтения
+ * Ключ включает версию коллекции, поэтому любое изменение коллекции делает старые записи ненужными:
+ * кэш очищается целиком, как только коллекция сообщает о новой версии
+ * Объем кэша ограничен суммарным размером полезной нагрузки, при переполнении вытесняются давно не использованные записи
+ */
+public class ResponseCache {
+    /** Доля емкости, больше которой одна запись в кэш не помещается */
+    private static final int MAX_ENTRY_SHARE = 4;
+
+    private final long capacityBytes;
+    private final long maxEntryBytes;
+    private final LinkedHashMap<List<Object>, List<EncodedResponse>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long sizeBytes;
+    /** Наибольшая версия коллекции, для которой в кэше есть записи */
+    private long version = Long.MIN_VALUE;
+    private long hits;
+    private long misses;
+
+    /**
+     * Создает кэш
+     * @param capacityBytes наибольший суммарный размер закодированных ответов в байтах
+     * @param maxEntryBytes наибольший размер одного ответа в байтах
+     */
+    public ResponseCache(long capacityBytes, long maxEntryBytes) {
+        this.capacityBytes = capacityBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, capacityBytes / MAX_ENTRY_SHARE);
+    }
+
+    /**
+     * Составляет ключ записи
+     * Ответы различаются способом кодирования, сжатием соединения и размером частей, поэтому они входят в ключ
+     * @param commandName имя команды
+     * @param args аргументы команды
+     * @param version версия коллекции, на которой выполнялась команда
+     * @param codec идентификатор способа кодирования
+     * @param compression согласовано ли сжатие
+     * @param chunkSize количество символов в части результата или 0, если результат передан одним ответом
+     * @return ключ записи
+     */
+    public static List<Object> key(String commandName, String[] args, long version, byte codec, boolean compression, int chunkSize) {
+        return List.of(commandName.toLowerCase(), Arrays.asList(args.clone()), version, codec, compression, chunkSize);
+    }
+
+    /**
+     * Возвращает закодированные кадры ответа
+     * @param key ключ, составленный {@link #key}
+     * @return кадры ответа в порядке отправки или null, если ответа нет в кэше
+     */
+    public synchronized List<EncodedResponse> get(List<Object> key) {
+        List<EncodedResponse> frames = entries.get(key);
+        if (frames == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return frames;
+    }
+
+    /**
+     * Запоминает закодированные кадры ответа
+     * Записи для более старых версий коллекции удаляются, а ответ для устаревшей версии не запоминается
+     * @param key ключ, составленный {@link #key}
+     * @param version версия коллекции, на которой выполнялась команда
+     * @param frames кадры ответа в порядке отправки
+     */
+    public synchronized void put(List<Object> key, long version, List<EncodedResponse> frames) {
+        if (version < this.version) return;
+        if (version > this.version) {
+            invalidate(version);
+        }
+        long size = sizeOf(frames);
+        if (size > getMaxEntryBytes()) return;
+        List<EncodedResponse> previous = entries.put(key, List.copyOf(frames));
+        if (previous != null) {
+            sizeBytes -= sizeOf(previous);
+        }
+        sizeBytes += size;
+        Iterator<List<EncodedResponse>> iterator = entries.values().iterator();
+        while (sizeBytes > capacityBytes && iterator.hasNext()) {
+            sizeBytes -= sizeOf(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Удаляет все записи, сделанные до указанной версии коллекции, и перестает принимать ответы для них
+     * @param version новая версия коллекции
+     */
+    public synchronized void invalidate(long version) {
+        if (version <= this.version) return;
+        entries.clear();
+        sizeBytes = 0;
+        this.version = version;
+    }
+
+    /**
+     * Возвращает наибольший размер одной записи; более крупные ответы не запоминаются,
+     * чтобы один ответ не вытеснял весь кэш, а запись частей большого результата не держала его в памяти
+     * @return размер в байтах
+     */
+    public long getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    /**
+     * Возвращает сводку о работе кэша
+     * @return строка с количеством попаданий, промахов, записей и занятым объемом
+     */
+    public synchronized String report() {
+        return "Кэш ответов: попаданий " + hits + ", промахов " + misses
+                + ", записей " + entries.size() + ", занято " + sizeBytes + " из " + capacityBytes + " байт";
+    }
+
+    private static long sizeOf(List<EncodedResponse> frames) {
+        long size = 0;
+        for (EncodedResponse frame : frames) {
+            size += frame.getPayload().length;
+        }
+        return size;
+    }
+}
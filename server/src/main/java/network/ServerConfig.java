@@ -0,0 +1,378 @@
+package network;
+
+import protocol.Frames;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Настройки сервера
+ * Значения по умолчанию могут быть переопределены переменными окружения
+ */
+public class ServerConfig {
+    /** Порт, на котором сервер принимает подключения, если адреса не заданы */
+    public static final int DEFAULT_PORT = 5555;
+    /** Режим обработки подключений */
+    private ServerMode mode = ServerMode.THREADS;
+    /** Адреса, на которых сервер принимает подключения */
+    private List<SocketAddress> listenAddresses = List.of(new InetSocketAddress(DEFAULT_PORT));
+    /** Адрес приема коротких запросов по UDP, null если прием датаграмм выключен */
+    private InetSocketAddress datagramAddress;
+    /** Количество потоков приема подключений */
+    private int acceptorThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    /** Количество потоков ввода/вывода в неблокирующем режиме */
+    private int ioThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    /** Количество потоков для тяжелых чтений коллекции */
+    private int workerThreads = Runtime.getRuntime().availableProcessors();
+    /** Количество потоков для дешевых чтений, проверок связи и декодирования запросов */
+    private int cheapWorkerThreads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+    /** Максимальное количество символов в одной части большого результата */
+    private int chunkSize = 16 * 1024;
+    /** Объем очереди исходящих кадров клиента в байтах, выше которого включается противодавление */
+    private int highWatermark = 1024 * 1024;
+    /** Объем очереди исходящих кадров клиента в байтах, ниже которого противодавление снимается */
+    private int lowWatermark = 256 * 1024;
+    /** Реакция на переполнение очереди исходящих кадров */
+    private OverflowPolicy overflowPolicy = OverflowPolicy.PAUSE;
+    /** Время в миллисекундах, которое поток ждет освобождения очереди, прежде чем закрыть соединение */
+    private int writeTimeoutMillis = 5000;
+    /** Наибольшее количество одновременных подключений */
+    private int maxConnections = 1024;
+    /** Наибольшее количество одновременных подключений с одного адреса */
+    private int maxConnectionsPerAddress = 64;
+    /** Длина очереди подключений, ожидающих приема */
+    private int acceptBacklog = 128;
+    /** Время в миллисекундах без входящих кадров, после которого соединение считается оборванным */
+    private int idleTimeoutMillis = 60000;
+    /** Разрешено ли сжатие ответов клиентам, которые его поддерживают */
+    private boolean compression = true;
+    /** Размер полезной нагрузки в байтах, начиная с которого она сжимается */
+    private int compressionThreshold = 1024;
+    /** Наибольший размер кадра от клиента, сообщаемый при рукопожатии; не больше Frames.MAX_FRAME_SIZE */
+    private int maxFrameSize = Frames.MAX_FRAME_SIZE;
+    /** Время в миллисекундах, за которое при остановке должны завершиться начатые запросы */
+    private int drainTimeoutMillis = 10000;
+    /** Включено ли ограничение частоты запросов */
+    private boolean rateLimiting = true;
+    /** Скорость пополнения жетонов соединения в секунду */
+    private int rateLimitPerConnection = 500;
+    /** Емкость ведра жетонов соединения */
+    private int rateBurstPerConnection = 1000;
+    /** Скорость пополнения жетонов адреса клиента в секунду, общих для всех его соединений и датаграмм */
+    private int rateLimitPerAddress = 2000;
+    /** Емкость ведра жетонов адреса клиента */
+    private int rateBurstPerAddress = 4000;
+    /** Стоимость дешевого запроса в жетонах */
+    private int rateCostCheap = 1;
+    /** Стоимость тяжелого чтения в жетонах */
+    private int rateCostHeavy = 10;
+    /** Стоимость изменения коллекции в жетонах; скрипт стоит столько за каждую свою строку */
+    private int rateCostMutation = 2;
+    /** Включен ли кэш закодированных ответов на команды чтения */
+    private boolean responseCache = true;
+    /** Наибольший суммарный размер закодированных ответов в кэше в байтах */
+    private int responseCacheBytes = 32 * 1024 * 1024;
+    /** Наибольший размер одного ответа в кэше в байтах; более крупные ответы не запоминаются */
+    private int responseCacheEntryBytes = 256 * 1024;
+
+    /**
+     * Создает настройки со значениями из переменных окружения
+     * LISTEN_ADDRESSES, UDP_ADDRESS, ACCEPTOR_THREADS, SERVER_MODE, IO_THREADS, WORKER_THREADS, CHEAP_WORKER_THREADS,
+     * CHUNK_SIZE, HIGH_WATERMARK, LOW_WATERMARK, OVERFLOW_POLICY, WRITE_TIMEOUT_MS, MAX_CONNECTIONS, MAX_CONNECTIONS_PER_IP, ACCEPT_BACKLOG
+     * IDLE_TIMEOUT_MS, COMPRESSION, COMPRESSION_THRESHOLD, MAX_FRAME_SIZE, DRAIN_TIMEOUT_MS, RATE_LIMITING,
+     * RATE_LIMIT_PER_CONNECTION, RATE_BURST_PER_CONNECTION, RATE_LIMIT_PER_IP, RATE_BURST_PER_IP,
+     * RATE_COST_CHEAP, RATE_COST_HEAVY, RATE_COST_MUTATION, RESPONSE_CACHE, RESPONSE_CACHE_BYTES и RESPONSE_CACHE_ENTRY_BYTES
+     * Значение MAX_FRAME_SIZE больше Frames.MAX_FRAME_SIZE уменьшается до Frames.MAX_FRAME_SIZE
+     * @return настройки сервера
+     * @throws IllegalArgumentException если значение переменной некорректно
+     */
+    public static ServerConfig fromEnvironment() {
+        ServerConfig config = new ServerConfig();
+        String mode = System.getenv("SERVER_MODE");
+        if (mode != null && !mode.isBlank()) {
+            config.setMode(ServerMode.fromString(mode));
+        }
+        String addresses = System.getenv("LISTEN_ADDRESSES");
+        if (addresses != null && !addresses.isBlank()) {
+            config.setListenAddresses(parseAddresses(addresses));
+        }
+        String datagramAddress = System.getenv("UDP_ADDRESS");
+        if (datagramAddress != null && !datagramAddress.isBlank()) {
+            List<SocketAddress> parsed = parseAddresses(datagramAddress);
+            if (parsed.size() != 1 || !(parsed.get(0) instanceof InetSocketAddress inet)) {
+                throw new IllegalArgumentException("UDP_ADDRESS должен содержать один адрес вида хост:порт");
+            }
+            config.setDatagramAddress(inet);
+        }
+        config.setAcceptorThreads(readInt("ACCEPTOR_THREADS", config.getAcceptorThreads()));
+        config.setIoThreads(readInt("IO_THREADS", config.getIoThreads()));
+        config.setWorkerThreads(readInt("WORKER_THREADS", config.getWorkerThreads()));
+        config.setCheapWorkerThreads(readInt("CHEAP_WORKER_THREADS", config.getCheapWorkerThreads()));
+        config.setChunkSize(readInt("CHUNK_SIZE", config.getChunkSize()));
+        config.setHighWatermark(readInt("HIGH_WATERMARK", config.getHighWatermark()));
+        config.setLowWatermark(readInt("LOW_WATERMARK", config.getLowWatermark()));
+        String policy = System.getenv("OVERFLOW_POLICY");
+        if (policy != null && !policy.isBlank()) {
+            config.setOverflowPolicy(OverflowPolicy.fromString(policy));
+        }
+        config.setWriteTimeoutMillis(readInt("WRITE_TIMEOUT_MS", config.getWriteTimeoutMillis()));
+        config.setMaxConnections(readInt("MAX_CONNECTIONS", config.getMaxConnections()));
+        config.setMaxConnectionsPerAddress(readInt("MAX_CONNECTIONS_PER_IP", config.getMaxConnectionsPerAddress()));
+        config.setAcceptBacklog(readInt("ACCEPT_BACKLOG", config.getAcceptBacklog()));
+        config.setIdleTimeoutMillis(readInt("IDLE_TIMEOUT_MS", config.getIdleTimeoutMillis()));
+        config.setCompression(readBoolean("COMPRESSION", config.isCompression()));
+        config.setCompressionThreshold(readInt("COMPRESSION_THRESHOLD", config.getCompressionThreshold()));
+        config.setMaxFrameSize(Math.min(Frames.MAX_FRAME_SIZE, readInt("MAX_FRAME_SIZE", config.getMaxFrameSize())));
+        config.setDrainTimeoutMillis(readInt("DRAIN_TIMEOUT_MS", config.getDrainTimeoutMillis()));
+        config.setRateLimiting(readBoolean("RATE_LIMITING", config.isRateLimiting()));
+        config.setRateLimitPerConnection(readInt("RATE_LIMIT_PER_CONNECTION", config.getRateLimitPerConnection()));
+        config.setRateBurstPerConnection(readInt("RATE_BURST_PER_CONNECTION", config.getRateBurstPerConnection()));
+        config.setRateLimitPerAddress(readInt("RATE_LIMIT_PER_IP", config.getRateLimitPerAddress()));
+        config.setRateBurstPerAddress(readInt("RATE_BURST_PER_IP", config.getRateBurstPerAddress()));
+        config.setRateCostCheap(readInt("RATE_COST_CHEAP", config.getRateCostCheap()));
+        config.setRateCostHeavy(readInt("RATE_COST_HEAVY", config.getRateCostHeavy()));
+        config.setRateCostMutation(readInt("RATE_COST_MUTATION", config.getRateCostMutation()));
+        config.setResponseCache(readBoolean("RESPONSE_CACHE", config.isResponseCache()));
+        config.setResponseCacheBytes(readInt("RESPONSE_CACHE_BYTES", config.getResponseCacheBytes()));
+        config.setResponseCacheEntryBytes(readInt("RESPONSE_CACHE_ENTRY_BYTES", config.getResponseCacheEntryBytes()));
+        if (config.getLowWatermark() > config.getHighWatermark()) {
+            throw new IllegalArgumentException("LOW_WATERMARK не может быть больше HIGH_WATERMARK");
+        }
+        return config;
+    }
+
+    /**
+     * Читает положительное целое значение переменной окружения
+     * @param name имя переменной
+     * @param defaultValue значение, если переменная не задана
+     * @return значение переменной
+     */
+    protected static int readInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        int result = Integer.parseInt(value.trim());
+        if (result <= 0) {
+            throw new IllegalArgumentException("Значение " + name + " должно быть больше 0");
+        }
+        return result;
+    }
+
+    /**
+     * Разбирает список адресов через запятую
+     * Адрес задается как хост:порт, [IPv6]:порт, только порт для всех интерфейсов
+     * или unix:путь для сокета Unix, через который подключаются клиенты на том же узле
+     * @param value список адресов
+     * @return адреса для прослушивания
+     * @throws IllegalArgumentException если адрес или порт некорректен
+     */
+    protected static List<SocketAddress> parseAddresses(String value) {
+        List<SocketAddress> result = new ArrayList<>();
+        for (String item : value.split(",")) {
+            String address = item.trim();
+            if (address.isEmpty()) continue;
+            if (address.startsWith("unix:")) {
+                String path = address.substring("unix:".length());
+                if (path.isEmpty()) {
+                    throw new IllegalArgumentException("Не указан путь сокета в адресе " + address);
+                }
+                result.add(UnixDomainSocketAddress.of(path));
+                continue;
+            }
+            int colon = address.lastIndexOf(':');
+            String host = colon < 0 ? "" : address.substring(0, colon);
+            if (host.startsWith("[") && host.endsWith("]")) {
+                host = host.substring(1, host.length() - 1);
+            }
+            int port;
+            try {
+                port = Integer.parseInt(address.substring(colon + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Некорректный порт в адресе " + address);
+            }
+            if (port <= 0 || port > 65535) {
+                throw new IllegalArgumentException("Некорректный порт в адресе " + address);
+            }
+            InetSocketAddress socketAddress = host.isEmpty() || host.equals("*")
+                    ? new InetSocketAddress(port) : new InetSocketAddress(host, port);
+            if (socketAddress.isUnresolved()) {
+                throw new IllegalArgumentException("Не удалось определить адрес " + host);
+            }
+            result.add(socketAddress);
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException("Не задано ни одного адреса в LISTEN_ADDRESSES");
+        }
+        return List.copyOf(result);
+    }
+
+    /**
+     * Читает логическое значение переменной окружения
+     * @param name имя переменной
+     * @param defaultValue значение, если переменная не задана
+     * @return значение переменной
+     */
+    protected static boolean readBoolean(String name, boolean defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        String normalized = value.trim().toLowerCase();
+        if (normalized.equals("true") || normalized.equals("on") || normalized.equals("1")) {
+            return true;
+        }
+        if (normalized.equals("false") || normalized.equals("off") || normalized.equals("0")) {
+            return false;
+        }
+        throw new IllegalArgumentException("Значение " + name + " должно быть true или false");
+    }
+
+    public List<SocketAddress> getListenAddresses() { return listenAddresses; }
+
+    public void setListenAddresses(List<SocketAddress> listenAddresses) { this.listenAddresses = listenAddresses; }
+
+    public InetSocketAddress getDatagramAddress() { return datagramAddress; }
+
+    public void setDatagramAddress(InetSocketAddress datagramAddress) { this.datagramAddress = datagramAddress; }
+
+    public int getAcceptorThreads() { return acceptorThreads; }
+
+    public void setAcceptorThreads(int acceptorThreads) { this.acceptorThreads = acceptorThreads; }
+
+    public ServerMode getMode() { return mode; }
+
+    public void setMode(ServerMode mode) { this.mode = mode; }
+
+    public int getIoThreads() { return ioThreads; }
+
+    public void setIoThreads(int ioThreads) { this.ioThreads = ioThreads; }
+
+    public int getWorkerThreads() { return workerThreads; }
+
+    public void setWorkerThreads(int workerThreads) { this.workerThreads = workerThreads; }
+
+    public int getCheapWorkerThreads() { return cheapWorkerThreads; }
+
+    public void setCheapWorkerThreads(int cheapWorkerThreads) { this.cheapWorkerThreads = cheapWorkerThreads; }
+
+    public int getChunkSize() { return chunkSize; }
+
+    public void setChunkSize(int chunkSize) { this.chunkSize = chunkSize; }
+
+    public int getHighWatermark() { return highWatermark; }
+
+    public void setHighWatermark(int highWatermark) { this.highWatermark = highWatermark; }
+
+    public int getLowWatermark() { return lowWatermark; }
+
+    public void setLowWatermark(int lowWatermark) { this.lowWatermark = lowWatermark; }
+
+    public OverflowPolicy getOverflowPolicy() { return overflowPolicy; }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) { this.overflowPolicy = overflowPolicy; }
+
+    public int getWriteTimeoutMillis() { return writeTimeoutMillis; }
+
+    public void setWriteTimeoutMillis(int writeTimeoutMillis) { this.writeTimeoutMillis = writeTimeoutMillis; }
+
+    public int getMaxConnections() { return maxConnections; }
+
+    public void setMaxConnections(int maxConnections) { this.maxConnections = maxConnections; }
+
+    public int getMaxConnectionsPerAddress() { return maxConnectionsPerAddress; }
+
+    public void setMaxConnectionsPerAddress(int maxConnectionsPerAddress) { this.maxConnectionsPerAddress = maxConnectionsPerAddress; }
+
+    public int getAcceptBacklog() { return acceptBacklog; }
+
+    public void setAcceptBacklog(int acceptBacklog) { this.acceptBacklog = acceptBacklog; }
+
+    public int getIdleTimeoutMillis() { return idleTimeoutMillis; }
+
+    public void setIdleTimeoutMillis(int idleTimeoutMillis) { this.idleTimeoutMillis = idleTimeoutMillis; }
+
+    public boolean isCompression() { return compression; }
+
+    public void setCompression(boolean compression) { this.compression = compression; }
+
+    public int getCompressionThreshold() { return compressionThreshold; }
+
+    public void setCompressionThreshold(int compressionThreshold) { this.compressionThreshold = compressionThreshold; }
+
+    public int getMaxFrameSize() { return maxFrameSize; }
+
+    public void setMaxFrameSize(int maxFrameSize) { this.maxFrameSize = maxFrameSize; }
+
+    public int getDrainTimeoutMillis() { return drainTimeoutMillis; }
+
+    public void setDrainTimeoutMillis(int drainTimeoutMillis) { this.drainTimeoutMillis = drainTimeoutMillis; }
+
+    public boolean isRateLimiting() { return rateLimiting; }
+
+    public void setRateLimiting(boolean rateLimiting) { this.rateLimiting = rateLimiting; }
+
+    public int getRateLimitPerConnection() { return rateLimitPerConnection; }
+
+    public void setRateLimitPerConnection(int rateLimitPerConnection) { this.rateLimitPerConnection = rateLimitPerConnection; }
+
+    public int getRateBurstPerConnection() { return rateBurstPerConnection; }
+
+    public void setRateBurstPerConnection(int rateBurstPerConnection) { this.rateBurstPerConnection = rateBurstPerConnection; }
+
+    public int getRateLimitPerAddress() { return rateLimitPerAddress; }
+
+    public void setRateLimitPerAddress(int rateLimitPerAddress) { this.rateLimitPerAddress = rateLimitPerAddress; }
+
+    public int getRateBurstPerAddress() { return rateBurstPerAddress; }
+
+    public void setRateBurstPerAddress(int rateBurstPerAddress) { this.rateBurstPerAddress = rateBurstPerAddress; }
+
+    public int getRateCostCheap() { return rateCostCheap; }
+
+    public void setRateCostCheap(int rateCostCheap) { this.rateCostCheap = rateCostCheap; }
+
+    public int getRateCostHeavy() { return rateCostHeavy; }
+
+    public void setRateCostHeavy(int rateCostHeavy) { this.rateCostHeavy = rateCostHeavy; }
+
+    public int getRateCostMutation() { return rateCostMutation; }
+
+    public void setRateCostMutation(int rateCostMutation) { this.rateCostMutation = rateCostMutation; }
+
+    public boolean isResponseCache() { return responseCache; }
+
+    public void setResponseCache(boolean responseCache) { this.responseCache = responseCache; }
+
+    public int getResponseCacheBytes() { return responseCacheBytes; }
+
+    public void setResponseCacheBytes(int responseCacheBytes) { this.responseCacheBytes = responseCacheBytes; }
+
+    public int getResponseCacheEntryBytes() { return responseCacheEntryBytes; }
+
+    public void setResponseCacheEntryBytes(int responseCacheEntryBytes) { this.responseCacheEntryBytes = responseCacheEntryBytes; }
+
+    @Override
+    public String toString() {
+        return "(listenAddresses = " + listenAddresses + ", datagramAddress = " + datagramAddress
+                + ", acceptorThreads = " + acceptorThreads
+                + ", mode = " + mode + ", ioThreads = " + ioThreads + ", workerThreads = " + workerThreads
+                + ", cheapWorkerThreads = " + cheapWorkerThreads
+                + ", chunkSize = " + chunkSize + ", highWatermark = " + highWatermark
+                + ", lowWatermark = " + lowWatermark + ", overflowPolicy = " + overflowPolicy
+                + ", writeTimeoutMillis = " + writeTimeoutMillis + ", maxConnections = " + maxConnections
+                + ", maxConnectionsPerAddress = " + maxConnectionsPerAddress + ", acceptBacklog = " + acceptBacklog
+                + ", idleTimeoutMillis = " + idleTimeoutMillis
+                + ", compression = " + compression + ", compressionThreshold = " + compressionThreshold
+                + ", maxFrameSize = " + maxFrameSize
+                + ", drainTimeoutMillis = " + drainTimeoutMillis + ", rateLimiting = " + rateLimiting
+                + ", rateLimitPerConnection = " + rateLimitPerConnection + "/" + rateBurstPerConnection
+                + ", rateLimitPerAddress = " + rateLimitPerAddress + "/" + rateBurstPerAddress
+                + ", rateCosts = " + rateCostCheap + "/" + rateCostHeavy + "/" + rateCostMutation
+                + ", responseCache = " + responseCache + ", responseCacheBytes = " + responseCacheBytes
+                + ", responseCacheEntryBytes = " + responseCacheEntryBytes + ")";
+    }
+}
@@ -0,0 +1,116 @@
+package network;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счетчики и показатели работы сервера, доступные администратору во время работы
+ * Все методы потокобезопасны и не берут блокировок
+ */
+public class ServerMetrics {
+    /** Количество принятых подключений с момента запуска */
+    private final LongAdder acceptedConnections = new LongAdder();
+    /** Количество отклоненных подключений с момента запуска */
+    private final LongAdder rejectedConnections = new LongAdder();
+    /** Количество открытых в данный момент подключений */
+    private final LongAdder activeConnections = new LongAdder();
+    /** Суммарное время приема подключений в наносекундах */
+    private final LongAdder acceptNanos = new LongAdder();
+    /** Наибольшее время приема одного подключения в наносекундах */
+    private final AtomicLong maxAcceptNanos = new AtomicLong();
+    /** Количество запросов, отклоненных из-за превышения предела частоты */
+    private final LongAdder rateLimitedRequests = new LongAdder();
+    /** Количество принятых к выполнению датаграмм */
+    private final LongAdder datagramsReceived = new LongAdder();
+    /** Количество отброшенных датаграмм: посторонних, поврежденных или полученных во время остановки */
+    private final LongAdder datagramsDropped = new LongAdder();
+
+    /**
+     * Учитывает принятое подключение
+     * @param nanos время от выхода селектора из ожидания до передачи подключения на обработку
+     */
+    public void connectionAccepted(long nanos) {
+        acceptedConnections.increment();
+        activeConnections.increment();
+        recordAcceptTime(nanos);
+    }
+
+    /**
+     * Учитывает отклоненное подключение
+     * @param nanos время от выхода селектора из ожидания до отказа
+     */
+    public void connectionRejected(long nanos) {
+        rejectedConnections.increment();
+        recordAcceptTime(nanos);
+    }
+
+    /**
+     * Учитывает закрытие ранее принятого подключения
+     */
+    public void connectionClosed() {
+        activeConnections.decrement();
+    }
+
+    /**
+     * Учитывает запрос, отклоненный из-за превышения предела частоты
+     */
+    public void requestRateLimited() {
+        rateLimitedRequests.increment();
+    }
+
+    /**
+     * Учитывает датаграмму, принятую к выполнению
+     */
+    public void datagramReceived() {
+        datagramsReceived.increment();
+    }
+
+    /**
+     * Учитывает отброшенную датаграмму
+     */
+    public void datagramDropped() {
+        datagramsDropped.increment();
+    }
+
+    private void recordAcceptTime(long nanos) {
+        acceptNanos.add(nanos);
+        maxAcceptNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getAcceptedConnections() { return acceptedConnections.sum(); }
+
+    public long getRejectedConnections() { return rejectedConnections.sum(); }
+
+    public long getActiveConnections() { return activeConnections.sum(); }
+
+    public long getRateLimitedRequests() { return rateLimitedRequests.sum(); }
+
+    public long getDatagramsReceived() { return datagramsReceived.sum(); }
+
+    public long getDatagramsDropped() { return datagramsDropped.sum(); }
+
+    /**
+     * Возвращает среднее время приема подключения
+     * @return среднее время в микросекундах или 0, если подключений не было
+     */
+    public long getAverageAcceptMicros() {
+        long count = acceptedConnections.sum() + rejectedConnections.sum();
+        return count == 0 ? 0 : acceptNanos.sum() / count / 1000;
+    }
+
+    public long getMaxAcceptMicros() { return maxAcceptNanos.get() / 1000; }
+
+    /**
+     * Формирует отчет о работе сервера для администратора
+     * @return многострочный отчет
+     */
+    public String report() {
+        return "Активных подключений: " + getActiveConnections() + "\n"
+                + "Принято подключений: " + getAcceptedConnections() + "\n"
+                + "Отклонено подключений: " + getRejectedConnections() + "\n"
+                + "Время приема подключения, мкс: среднее " + getAverageAcceptMicros()
+                + ", наибольшее " + getMaxAcceptMicros() + "\n"
+                + "Отклонено запросов сверх предела частоты: " + getRateLimitedRequests() + "\n"
+                + "Датаграмм принято: " + getDatagramsReceived() + ", отброшено: " + getDatagramsDropped();
+    }
+}
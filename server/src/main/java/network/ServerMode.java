@@ -0,0 +1,28 @@
+package network;
+
+/**
+ * Перечисление режимов обработки клиентских подключений
+ */
+public enum ServerMode {
+    /** Отдельный поток на каждое подключение с блокирующим вводом/выводом */
+    THREADS,
+    /** Отдельный виртуальный поток на каждое подключение с блокирующим вводом/выводом */
+    VIRTUAL,
+    /** Неблокирующий ввод/вывод на селекторах и общий пул потоков для команд */
+    NIO;
+
+    /**
+     * Определяет режим по его названию без учета регистра
+     * @param name название режима
+     * @return найденный режим
+     * @throws IllegalArgumentException если режима с таким названием нет
+     */
+    public static ServerMode fromString(String name) {
+        for (ServerMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name.trim())) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный режим сервера: " + name);
+    }
+}
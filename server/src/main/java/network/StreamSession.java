@@ -0,0 +1,143 @@
+package network;
+
+import protocol.Frame;
+import protocol.Frames;
+import things.Request;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Сеанс клиента с блокирующим вводом/выводом через потоки канала
+ * Работает одинаково для TCP и для сокетов Unix
+ * Запросы читает поток подключения, а ответы пишет в сокет отдельный поток записи,
+ * поэтому медленный клиент не задерживает потоки, выполняющие команды
+ */
+public class StreamSession extends ClientSession {
+    /** Пустой кадр, по которому поток записи завершает работу */
+    private static final ByteBuffer END_OF_QUEUE = ByteBuffer.allocate(0);
+
+    private final SocketChannel channel;
+    private final DataInputStream in;
+    private final OutputStream out;
+    /** Очередь кадров (ByteBuffer) и участков файлов (FileRegion), ожидающих записи в сокет */
+    private final BlockingQueue<Object> outbound = new LinkedBlockingQueue<>();
+
+    /**
+     * Создает сеанс поверх подключенного блокирующего канала и запускает поток записи
+     * @param channel канал клиента
+     * @param config настройки сервера
+     * @param threads построитель потоков того же вида, что и поток подключения
+     * @throws IOException если канал уже закрыт
+     */
+    public StreamSession(SocketChannel channel, ServerConfig config, Thread.Builder threads) throws IOException {
+        super(config, peerAddress(channel));
+        this.channel = channel;
+        this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        this.out = new BufferedOutputStream(Channels.newOutputStream(channel));
+        threads.start(this::writeLoop);
+    }
+
+    /**
+     * Блокируется до получения первого кадра клиента и завершает по нему рукопожатие
+     * @param commandHash хеш таблицы команд сервера
+     * @throws IOException если соединение разорвано или рукопожатие некорректно
+     */
+    public void handshake(int commandHash) throws IOException {
+        Frame frame = Frames.readFrame(in, config.getMaxFrameSize());
+        touch();
+        completeHandshake(frame.getPayload(), commandHash);
+    }
+
+    /**
+     * Блокируется до получения очередного запроса клиента
+     * Пока клиент не вычитал накопившиеся ответы, новые запросы не читаются
+     * @return полученный запрос
+     * @throws IOException если соединение разорвано или кадр поврежден
+     */
+    public Request readRequest() throws IOException {
+        awaitReadingResumed();
+        Frame frame = Frames.readFrame(in, config.getMaxFrameSize());
+        touch();
+        Request request = getCodec().decodeRequest(frame.getContent(config.getMaxFrameSize()));
+        request.setRequestId(frame.getId());
+        return request;
+    }
+
+    @Override
+    protected void writeFrame(long id, byte[] payload, boolean compressed) throws IOException {
+        if (!channel.isOpen()) {
+            throw new IOException("Соединение с клиентом закрыто");
+        }
+        outbound.add(Frames.toBuffer(id, payload, compressed));
+    }
+
+    @Override
+    protected void writeRegion(FileRegion region) throws IOException {
+        if (!channel.isOpen()) {
+            throw new IOException("Соединение с клиентом закрыто");
+        }
+        outbound.add(region);
+    }
+
+    /**
+     * Записывает кадры из очереди в сокет, сбрасывая буфер, когда очередь опустела
+     * Участки файлов передаются прямо в канал, поэтому перед ними буфер сбрасывается
+     * Выполняется в отдельном потоке до закрытия сеанса
+     */
+    private void writeLoop() {
+        try {
+            while (true) {
+                Object item = outbound.take();
+                if (item == END_OF_QUEUE) {
+                    return;
+                }
+                if (item instanceof FileRegion region) {
+                    out.flush();
+                    try {
+                        // Блокирующий канал принимает участок целиком, transferTo лишь может вернуть его по частям
+                        while (!region.transferTo(channel)) {
+                            Thread.onSpinWait();
+                        }
+                    } finally {
+                        region.release();
+                    }
+                    onFrameWritten(region.size());
+                    continue;
+                }
+                ByteBuffer frame = (ByteBuffer) item;
+                out.write(frame.array(), 0, frame.limit());
+                if (outbound.isEmpty()) {
+                    out.flush();
+                }
+                onFrameWritten(frame.limit());
+            }
+        } catch (IOException | InterruptedException e) {
+            try {
+                close();
+            } catch (IOException ignored) {
+                // сокет уже закрыт
+            }
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return !channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            releaseRegions(outbound);
+            outbound.add(END_OF_QUEUE);
+            wakeWaiters();
+        }
+    }
+}
@@ -1,24 +1,44 @@
 package network;
 
 import commands.Command;
+import interfaces.FileTransferable;
 import exceptions.ScriptRecursionException;
+import exceptions.SlowConsumerException;
 import mainClasses.Ticket;
 import managers.CollectionManager;
 import managers.CommandManager;
+import protocol.Frame;
+import protocol.Frames;
+import protocol.Handshake;
 import things.Request;
 import things.Response;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.nio.channels.Selector;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.Channels;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Класс, реализующий TCP сервер для обработки клиентских запросов
@@ -27,149 +47,771 @@ import java.util.concurrent.CopyOnWriteArrayList;
 public class TCPServer {
     /** Логгер для записи событий сервера */
     private static final Logger logger = LogManager.getLogger(TCPServer.class);
-    /** Селектор для неблокирующего ввода/вывода */
-    private Selector selector;
-    /** Серверный сокет для приема подключений */
-    private ServerSocket serverSocket;
-    /** Флаг работы сервера */
-    private volatile boolean isRunning = true;
+    /** Наибольшее количество одновременно отправляемых отказов в подключении */
+    private static final int MAX_PENDING_REJECTIONS = 64;
+    /**
+     * Команды, доступные по UDP: их ответ короткий, поэтому поддельный адрес отправителя
+     * не позволяет использовать сервер для усиления чужого трафика
+     */
+    private static final Set<String> DATAGRAM_COMMANDS = Set.of("info", "count_greater_than_type");
+    /** Время ожидания рукопожатия от клиента, которому отказано в подключении, в миллисекундах */
+    private static final int REJECTION_TIMEOUT_MILLIS = 1000;
+    /** Серверные каналы всех потоков приема подключений */
+    private final List<ServerSocketChannel> serverChannels = new CopyOnWriteArrayList<>();
+    /** Потоки приема подключений */
+    private final List<Acceptor> acceptors = new CopyOnWriteArrayList<>();
+    private final List<Thread> acceptorThreads = new ArrayList<>();
+    /** Прием коротких запросов по UDP, null если выключен */
+    private volatile DatagramEndpoint datagramEndpoint;
+    /** Флаг остановки: новые запросы больше не выполняются */
+    private volatile boolean draining = false;
     /** Менеджер коллекции работников */
     private final CollectionManager collectionManager;
     /** Менеджер команд */
     private final CommandManager commandManager;
+    /** Настройки сервера */
+    private final ServerConfig config;
     /** Сканер для чтения команд администратора */
     private final Scanner scanner = new Scanner(System.in);
     /** Список активных подключений */
-    private final List<Socket> activeSockets = new CopyOnWriteArrayList<>();
-    /** Счетчик подключенных клиентов */
-    public int clientCount = 0;
-    /** Множество активных скриптов для предотвращения рекурсии */
-    private final Set<String> activeScripts = new HashSet<>();
+    private final List<ClientSession> activeSessions = new CopyOnWriteArrayList<>();
+    /** Показатели работы сервера */
+    private final ServerMetrics metrics = new ServerMetrics();
+    /** Ограничитель количества одновременных подключений */
+    private final ConnectionLimiter limiter;
+    /** Ограничитель частоты запросов соединений и адресов */
+    private final RateLimiter rateLimiter;
+    /** Разрешения на отправку отказов, чтобы поток отказов не порождал неограниченное число потоков */
+    private final Semaphore rejections = new Semaphore(MAX_PENDING_REJECTIONS);
+    /** Циклы ввода/вывода неблокирующего режима */
+    private IoLoop[] ioLoops;
+    /** Номер цикла ввода/вывода для следующего подключения */
+    private final AtomicInteger nextIoLoop = new AtomicInteger();
+    /** Очереди выполнения команд, запросы одного клиента выполняются независимо */
+    private CommandDispatcher dispatcher;
+    /** Планировщик проверки бездействующих соединений */
+    private ScheduledExecutorService reaper;
+    /** Кэш закодированных ответов на команды чтения, null если кэш выключен */
+    private final ResponseCache responseCache;
 
     /**
-     * Конструктор сервера
+     * Конструктор сервера с настройками по умолчанию
      * @param collectionManager менеджер коллекции
      * @param commandManager менеджер команд
      */
     public TCPServer(CollectionManager collectionManager, CommandManager commandManager) {
+        this(collectionManager, commandManager, new ServerConfig());
+    }
+
+    /**
+     * Конструктор сервера
+     * @param collectionManager менеджер коллекции
+     * @param commandManager менеджер команд
+     * @param config настройки сервера
+     */
+    public TCPServer(CollectionManager collectionManager, CommandManager commandManager, ServerConfig config) {
         this.collectionManager = collectionManager;
         this.commandManager = commandManager;
+        this.config = config;
+        this.limiter = new ConnectionLimiter(config.getMaxConnections(), config.getMaxConnectionsPerAddress());
+        this.rateLimiter = new RateLimiter(config);
+        this.responseCache = config.isResponseCache()
+                ? new ResponseCache(config.getResponseCacheBytes(), config.getResponseCacheEntryBytes()) : null;
+        if (responseCache != null) {
+            collectionManager.setVersionListener(responseCache::invalidate);
+        }
     }
 
     /**
-     * Запускает сервер на указанном порту
+     * Запускает сервер на указанном порту всех интерфейсов
      * @param port порт для прослушивания
      * @throws IOException если возникла ошибка при запуске сервера
      */
     public void start(int port) throws IOException {
-        serverSocket = new ServerSocket(port);
-        logger.info("Сервер запущен на порту {}", port);
+        config.setListenAddresses(List.of(new InetSocketAddress(port)));
+        start();
+    }
 
+    /**
+     * Запускает сервер на адресах из настроек и ждет завершения потоков приема подключений
+     * @throws IOException если возникла ошибка при запуске сервера
+     */
+    public void start() throws IOException {
+        dispatcher = new CommandDispatcher(config);
+        if (config.getMode() == ServerMode.NIO) {
+            startIoLoops();
+        }
+        startReaper();
+        startAcceptors();
+        startDatagramEndpoint();
+        logger.info("Сервер запущен на адресах {} с настройками {}", config.getListenAddresses(), config);
         new Thread(this::adminInput).start();
 
-        while (isRunning) {
+        for (Thread thread : acceptorThreads) {
             try {
-                Socket clientSocket = serverSocket.accept();
-                activeSockets.add(clientSocket);
-                logger.info("Подключение от клиента №{}", ++clientCount);
-                new Thread(() -> handleConnection(clientSocket)).start();
-            } catch (IOException e) {
-                if (!isRunning) {
-                    logger.info("Сервер остановлен!");
-                    break;
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        logger.info("Сервер остановлен!");
+    }
+
+    /**
+     * Открывает серверные каналы и запускает потоки приема подключений
+     * Если ядро поддерживает SO_REUSEPORT, каждый поток получает собственные каналы на тех же TCP адресах
+     * и ядро распределяет подключения между ними; иначе, а также для сокетов Unix, на каждый адрес
+     * открывается один канал, который разбирают все потоки
+     * @throws IOException если не удалось открыть канал на одном из адресов
+     */
+    private void startAcceptors() throws IOException {
+        int threads = config.getAcceptorThreads();
+        boolean reusePort = threads > 1 && supportsReusePort();
+        List<SocketAddress> inet = new ArrayList<>();
+        List<SocketAddress> unix = new ArrayList<>();
+        for (SocketAddress address : config.getListenAddresses()) {
+            (address instanceof UnixDomainSocketAddress ? unix : inet).add(address);
+        }
+        List<ServerSocketChannel> shared = openServerChannels(reusePort ? unix : config.getListenAddresses(), false);
+        for (int i = 0; i < threads; i++) {
+            List<ServerSocketChannel> channels = shared;
+            if (reusePort) {
+                channels = new ArrayList<>(shared);
+                channels.addAll(openServerChannels(inet, true));
+            }
+            Acceptor acceptor = new Acceptor(this, channels);
+            acceptors.add(acceptor);
+            acceptorThreads.add(new Thread(acceptor, "acceptor-" + i));
+        }
+        acceptorThreads.forEach(Thread::start);
+        logger.info("Потоков приема подключений: {}, SO_REUSEPORT: {}", threads, reusePort);
+    }
+
+    /**
+     * Открывает прием коротких запросов по UDP, если он включен в настройках
+     * @throws IOException если не удалось привязать канал к адресу
+     */
+    private void startDatagramEndpoint() throws IOException {
+        InetSocketAddress address = config.getDatagramAddress();
+        if (address == null) return;
+        DatagramChannel channel = DatagramChannel.open();
+        channel.bind(address);
+        datagramEndpoint = new DatagramEndpoint(channel, this, dispatcher, metrics);
+        new Thread(datagramEndpoint, "udp").start();
+        logger.info("Прием запросов по UDP на адресе {}", address);
+    }
+
+    /**
+     * Проверяет, поддерживает ли платформа SO_REUSEPORT для серверных каналов
+     * @return true, если опция поддерживается
+     * @throws IOException если не удалось открыть пробный канал
+     */
+    private static boolean supportsReusePort() throws IOException {
+        try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+            return probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        }
+    }
+
+    /**
+     * Открывает по неблокирующему серверному каналу на каждый адрес
+     * Оставшийся от прошлого запуска файл сокета Unix удаляется перед привязкой
+     * @param addresses адреса для прослушивания
+     * @param reusePort включить ли SO_REUSEPORT, чтобы на том же адресе могли слушать другие потоки
+     * @return открытые каналы
+     * @throws IOException если не удалось открыть канал
+     */
+    private List<ServerSocketChannel> openServerChannels(List<SocketAddress> addresses, boolean reusePort) throws IOException {
+        List<ServerSocketChannel> channels = new ArrayList<>();
+        for (SocketAddress address : addresses) {
+            ServerSocketChannel channel;
+            if (address instanceof UnixDomainSocketAddress unix) {
+                Files.deleteIfExists(unix.getPath());
+                channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+                serverChannels.add(channel);
+            } else {
+                channel = ServerSocketChannel.open();
+                serverChannels.add(channel);
+                channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                if (reusePort) {
+                    channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
                 }
             }
+            channel.bind(address, config.getAcceptBacklog());
+            channel.configureBlocking(false);
+            channels.add(channel);
         }
+        return channels;
     }
 
     /**
-     * Обрабатывает подключение клиента
-     * @param socket сокет клиента
+     * Запускает периодическое закрытие соединений, от которых давно не было данных,
+     * и удаление ведер жетонов адресов, от которых давно не было запросов
+     */
+    private void startReaper() {
+        reaper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "idle-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, config.getIdleTimeoutMillis() / 4);
+        reaper.scheduleAtFixedRate(this::closeIdleSessions, period, period, TimeUnit.MILLISECONDS);
+        reaper.scheduleAtFixedRate(rateLimiter::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Закрывает соединения, от которых дольше допустимого не было ни запросов, ни проверок связи
      */
-    private void handleConnection(Socket socket) {
+    private void closeIdleSessions() {
+        for (ClientSession session : activeSessions) {
+            long idle = session.getIdleMillis();
+            if (idle > config.getIdleTimeoutMillis()) {
+                logger.info("Соединение с клиентом {} закрывается после {} мс бездействия", session.getRemoteAddress(), idle);
+                closeSession(session);
+            }
+        }
+    }
+
+    /**
+     * Запускает циклы ввода/вывода неблокирующего режима
+     * @throws IOException если не удалось открыть селекторы
+     */
+    private void startIoLoops() throws IOException {
+        ioLoops = new IoLoop[config.getIoThreads()];
+        for (int i = 0; i < ioLoops.length; i++) {
+            ioLoops[i] = new IoLoop(this);
+            new Thread(ioLoops[i], "io-" + i).start();
+        }
+    }
+
+    /**
+     * Принимает подключение, если не превышены пределы количества подключений, иначе отказывает в нем
+     * Вызывается одновременно несколькими потоками приема подключений
+     * @param clientChannel канал клиента
+     * @param readyAt момент выхода селектора из ожидания, от которого отсчитывается время приема
+     * @throws IOException если не удалось настроить канал
+     */
+    void admit(SocketChannel clientChannel, long readyAt) throws IOException {
+        InetAddress address = ClientSession.peerAddress(clientChannel);
+        String reason = limiter.tryAcquire(address);
+        if (reason != null) {
+            metrics.connectionRejected(System.nanoTime() - readyAt);
+            logger.warn("Подключение с адреса {} отклонено: {}", address, reason);
+            reject(clientChannel, reason);
+            return;
+        }
         try {
+            onAccepted(clientChannel);
+        } catch (IOException e) {
+            limiter.release(address);
+            clientChannel.close();
+            throw e;
+        }
+        metrics.connectionAccepted(System.nanoTime() - readyAt);
+        logger.info("Подключение от клиента №{}", metrics.getAcceptedConnections());
+    }
 
-            ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-            ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
-
-            while (!socket.isClosed()) {
-                Request request = (Request) in.readObject();
-                logger.info("Получен запрос: {}", request.toString());
-
-                if (request.getType() == Request.RequestType.INITIAL_COMMAND) {
-                    Command command = commandManager.getCommands().get(request.getCommandName());
-                    if (command != null) {
-                        if (command.needArgs && request.getArgs().length == 0) {
-                            Response response = new Response(Response.ResponseType.ERROR, false,
-                                    "У данной команды обязательно должен быть указан ее аргумент.");
-                            logger.info("Сформирован ответ клиенту: {}", response.toString());
-                            sendResponse(response, out);
-                            logger.warn("Команда была введена некорректно!");
-                        } else {
-                            logger.info("Запрос на выполнение команды: {}", command.toString());
-                            if (command.getCommandType() == Command.CommandType.WITHOUT_TICKET_DATA) {
-                                Response response = commandManager.executeCommand(request.getCommandName(), request.getArgs(), collectionManager);
-                                logger.info("Сформирован ответ клиенту: {}", response.toString());
-                                sendResponse(response, out);
-                            } else {
-                                Response response = new Response(Response.ResponseType.NEED_TICKET, "Требуется ввести данные о билете");
-                                logger.info("Сформирован ответ клиенту: {}", response.toString());
-                                out.writeObject(response);
-                                Request newRequest = (Request) in.readObject();
-                                Ticket ticket = newRequest.getWorker();
-                                logger.info("Получены данные о билете: {}", newRequest.getWorker().toString());
-                                Response newResponse = commandManager.executeCommand(request.getCommandName(), request.getArgs(), collectionManager, ticket);
-                                logger.info("Сформирован ответ клиенту: {}", newResponse.toString());
-                                sendResponse(newResponse, out);
-                            }
-                        }
-                    } else {
-                        Response response = new Response(Response.ResponseType.ERROR, "Введена некорректная команда!");
-                        logger.warn("Сформирован ответ клиенту: {}", response.toString());
-                        sendResponse(response, out);
-                    }
-                } else if (request.getType() == Request.RequestType.SCRIPT_TRANSFER) {
-                    processScriptRequest(request, out);
+    /**
+     * Отправляет клиенту отказ в подключении и закрывает соединение
+     * Отказ отправляется в отдельном виртуальном потоке, чтобы не задерживать прием других подключений;
+     * если отказов отправляется слишком много, соединение закрывается сразу
+     * @param clientChannel канал клиента
+     * @param reason причина отказа
+     * @throws IOException если не удалось закрыть канал
+     */
+    private void reject(SocketChannel clientChannel, String reason) throws IOException {
+        if (!rejections.tryAcquire()) {
+            clientChannel.close();
+            return;
+        }
+        Thread.ofVirtual().start(() -> {
+            // У каналов сокетов Unix нет тайм-аута чтения, поэтому зависший клиент отключается по расписанию
+            ScheduledFuture<?> timeout = reaper.schedule(() -> {
+                try {
+                    clientChannel.close();
+                } catch (IOException ignored) {
+                    // канал уже закрыт
                 }
+            }, REJECTION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            try (clientChannel) {
+                clientChannel.configureBlocking(true);
+                // Рукопожатие клиента вычитывается, чтобы закрытие сокета не сбросило отправленный ему отказ
+                Frames.readFrame(new DataInputStream(Channels.newInputStream(clientChannel)));
+                Frames.writeFrame(new DataOutputStream(Channels.newOutputStream(clientChannel)), 0,
+                        Handshake.rejection(reason).toBytes());
+            } catch (IOException e) {
+                logger.debug("Не удалось отправить отказ в подключении: {}", e.getMessage());
+            } finally {
+                timeout.cancel(false);
+                rejections.release();
+            }
+        });
+    }
+
+    /**
+     * Передает принятое подключение на обработку в соответствии с режимом сервера
+     * @param clientChannel канал клиента
+     * @throws IOException если не удалось настроить канал
+     */
+    private void onAccepted(SocketChannel clientChannel) throws IOException {
+        if (clientChannel.supportedOptions().contains(StandardSocketOptions.TCP_NODELAY)) {
+            clientChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+        if (config.getMode() == ServerMode.NIO) {
+            clientChannel.configureBlocking(false);
+            IoLoop loop = ioLoops[Math.floorMod(nextIoLoop.getAndIncrement(), ioLoops.length)];
+            NioSession session = new NioSession(clientChannel, loop, config);
+            activeSessions.add(session);
+            loop.register(session);
+        } else {
+            clientChannel.configureBlocking(true);
+            StreamSession session = new StreamSession(clientChannel, config, connectionThreads());
+            activeSessions.add(session);
+            connectionThreads().start(() -> handleConnection(session));
+        }
+    }
+
+    /**
+     * Возвращает построитель потоков для обслуживания подключений в блокирующих режимах
+     * @return построитель виртуальных потоков в режиме VIRTUAL и обычных потоков иначе
+     */
+    private Thread.Builder connectionThreads() {
+        return config.getMode() == ServerMode.VIRTUAL ? Thread.ofVirtual() : Thread.ofPlatform();
+    }
+
+    /**
+     * Обрабатывает подключение клиента
+     * Поток подключения только читает запросы, а выполняют их очереди выполнения команд,
+     * поэтому клиент может отправить несколько запросов, не дожидаясь ответов
+     * @param session сеанс клиента
+     */
+    private void handleConnection(StreamSession session) {
+        try {
+            session.handshake(commandManager.getCommandTableHash());
+            logger.info("Согласован способ кодирования: {}", session.getCodec().getClass().getSimpleName());
+
+            while (!session.isClosed()) {
+                Request request = session.readRequest();
+                execute(request, session);
             }
         } catch (Exception e) {
             logger.error("Ошибка при обработке соединения: {}", (Object) e.getStackTrace());
         } finally {
-            closeSocket(socket);
-            activeSockets.remove(socket);
+            closeSession(session);
+        }
+    }
+
+    /**
+     * Завершает рукопожатие по первому кадру клиента
+     * Вызывается потоком ввода/вывода неблокирующего режима
+     * @param session сеанс клиента
+     * @param frame полезная нагрузка первого кадра
+     * @throws IOException если рукопожатие некорректно
+     */
+    void handshake(NioSession session, byte[] frame) throws IOException {
+        session.completeHandshake(frame, commandManager.getCommandTableHash());
+        logger.info("Согласован способ кодирования: {}", session.getCodec().getClass().getSimpleName());
+    }
+
+    /**
+     * Передает полученный кадр на выполнение
+     * Вызывается потоком ввода/вывода неблокирующего режима, поэтому распаковка и декодирование
+     * выполняются в очереди дешевых чтений, откуда запрос передается в свою очередь
+     * Поврежденный кадр может вызвать не только ошибку ввода/вывода, но и любое исключение при разборе,
+     * в обоих случаях соединение с клиентом закрывается
+     * @param session сеанс клиента
+     * @param frame кадр с запросом
+     */
+    void dispatch(NioSession session, Frame frame) {
+        boolean accepted = !draining && dispatcher.submit(Command.Lane.CHEAP_READ, () -> {
+            Request request;
+            Command.Lane lane;
+            try {
+                request = session.getCodec().decodeRequest(frame.getContent(config.getMaxFrameSize()));
+                request.setRequestId(frame.getId());
+                lane = laneOf(request, session);
+            } catch (IOException | RuntimeException e) {
+                logger.error("Ошибка при декодировании запроса: {}", e.toString());
+                closeSession(session);
+                return;
+            }
+            if (!withinRateLimit(request, lane, session)) {
+                return;
+            }
+            if (lane == Command.Lane.CHEAP_READ) {
+                runRequest(request, session);
+            } else if (!dispatcher.submit(lane, () -> runRequest(request, session))) {
+                refuse(request.getRequestId(), session);
+            }
+        });
+        if (!accepted) {
+            refuse(frame.getId(), session);
+        }
+    }
+
+    /**
+     * Передает прочитанный запрос в очередь выполнения
+     * @param request запрос клиента
+     * @param session сеанс клиента
+     */
+    private void execute(Request request, ClientSession session) {
+        Command.Lane lane = laneOf(request, session);
+        if (!draining && !withinRateLimit(request, lane, session)) {
+            return;
+        }
+        if (draining || !dispatcher.submit(lane, () -> runRequest(request, session))) {
+            refuse(request.getRequestId(), session);
+        }
+    }
+
+    /**
+     * Забирает жетоны на запрос и отвечает отказом, если клиент превысил предел частоты запросов
+     * Ответ ставится в очередь без ожидания, поэтому метод можно вызывать из любого потока
+     * @param request запрос клиента
+     * @param lane очередь выполнения запроса
+     * @param session сеанс клиента
+     * @return true, если запрос можно выполнять
+     */
+    private boolean withinRateLimit(Request request, Command.Lane lane, ClientSession session) {
+        int cost = costOf(request, lane);
+        if (cost == 0) return true;
+        long retryAfter = rateLimiter.tryAcquire(session.getRateBucket(), session.getRemoteAddress(), cost);
+        if (retryAfter == 0) return true;
+        metrics.requestRateLimited();
+        Response response = rateLimited(retryAfter);
+        response.setRequestId(request.getRequestId());
+        try {
+            session.offer(response);
+        } catch (IOException e) {
+            closeSession(session);
+        }
+        return false;
+    }
+
+    /**
+     * Определяет стоимость запроса в жетонах
+     * Проверки связи и данные о билете бесплатны: вторые уже оплачены начальной командой,
+     * скрипт стоит как изменение коллекции за каждую свою непустую строку
+     * @param request запрос клиента
+     * @param lane очередь выполнения запроса
+     * @return стоимость запроса
+     */
+    private int costOf(Request request, Command.Lane lane) {
+        switch (request.getType()) {
+            case HEARTBEAT:
+            case TICKET_DATA:
+                return 0;
+            case SCRIPT_TRANSFER:
+                String content = request.getScriptContent();
+                long lines = content == null ? 1 : Math.max(1, content.lines().filter(line -> !line.isBlank()).count());
+                return (int) Math.min(Integer.MAX_VALUE, lines * rateLimiter.costOf(Command.Lane.MUTATION));
+            default:
+                return rateLimiter.costOf(lane);
+        }
+    }
+
+    /**
+     * Формирует отказ из-за превышения предела частоты запросов
+     * @param retryAfter время в миллисекундах, через которое стоит повторить запрос
+     * @return ответ с отказом
+     */
+    private static Response rateLimited(long retryAfter) {
+        return new Response(Response.ResponseType.RATE_LIMITED, false,
+                "Превышен предел частоты запросов, повторите через " + retryAfter + " мс");
+    }
+
+    /**
+     * Сообщает клиенту, что запрос не будет выполнен, потому что сервер останавливается
+     * Ответ ставится в очередь без ожидания, поэтому метод можно вызывать из потока ввода/вывода
+     * @param requestId идентификатор запроса
+     * @param session сеанс клиента
+     */
+    private void refuse(long requestId, ClientSession session) {
+        Response response = new Response(Response.ResponseType.ERROR, false, "Сервер завершает работу, запрос не выполнен");
+        response.setRequestId(requestId);
+        try {
+            session.offer(response);
+        } catch (IOException e) {
+            closeSession(session);
+        }
+    }
+
+    /**
+     * Определяет очередь выполнения запроса
+     * Скрипты и данные о билетах всегда изменяют коллекцию, проверки связи и неизвестные команды
+     * выполняются как дешевые чтения, остальные запросы - в очереди своей команды
+     * @param request запрос клиента
+     * @param session сеанс клиента
+     * @return очередь выполнения
+     */
+    private Command.Lane laneOf(Request request, ClientSession session) {
+        switch (request.getType()) {
+            case HEARTBEAT:
+                return Command.Lane.CHEAP_READ;
+            case SCRIPT_TRANSFER:
+            case TICKET_DATA:
+                return Command.Lane.MUTATION;
+            default:
+                Command command = commandManager.getCommands().get(request.getCommandName());
+                return command == null ? Command.Lane.CHEAP_READ : command.getLane();
+        }
+    }
+
+    /**
+     * Выполняет запрос, полученный в датаграмме
+     * Без соединения нельзя ни запросить данные о билете, ни передать результат частями, а адрес отправителя
+     * не проверен, поэтому выполняются только команды с коротким ответом из {@link #DATAGRAM_COMMANDS};
+     * повторное выполнение таких команд безопасно
+     * @param request запрос клиента
+     * @param address адрес отправителя датаграммы
+     * @return ответ на запрос или null, если команда недоступна по UDP и запрос нужно отбросить без ответа
+     */
+    Response executeReadOnly(Request request, InetAddress address) {
+        Command command = commandManager.getCommands().get(request.getCommandName());
+        if (request.getType() != Request.RequestType.INITIAL_COMMAND || command == null
+                || command.getLane() != Command.Lane.CHEAP_READ || !DATAGRAM_COMMANDS.contains(command.getName())) {
+            return null;
+        }
+        if (command.needArgs && request.getArgs().length == 0) {
+            return new Response(Response.ResponseType.ERROR, false, "У данной команды обязательно должен быть указан ее аргумент.");
+        }
+        long retryAfter = rateLimiter.tryAcquire(null, address, rateLimiter.costOf(Command.Lane.CHEAP_READ));
+        if (retryAfter > 0) {
+            metrics.requestRateLimited();
+            return rateLimited(retryAfter);
+        }
+        // Агенты мониторинга опрашивают сервер постоянно, поэтому такие запросы не засоряют журнал
+        logger.debug("Получен запрос по UDP: {}", request);
+        return commandManager.executeCommand(request.getCommandName(), request.getArgs(), collectionManager);
+    }
+
+    /**
+     * Выполняет запрос, закрывая соединение при ошибке отправки ответа
+     * @param request запрос клиента
+     * @param session сеанс клиента
+     */
+    private void runRequest(Request request, ClientSession session) {
+        try {
+            processRequest(request, session);
+        } catch (SlowConsumerException e) {
+            logger.warn("Соединение с медленным клиентом закрыто: {}", e.getMessage());
+            closeSession(session);
+        } catch (Exception e) {
+            logger.error("Ошибка при обработке запроса: {}", e.getMessage());
+            closeSession(session);
+        }
+    }
+
+    /**
+     * Обрабатывает один запрос клиента
+     * @param request запрос клиента
+     * @param session сеанс клиента
+     * @throws IOException если возникла ошибка при отправке ответа
+     */
+    private void processRequest(Request request, ClientSession session) throws IOException {
+        if (request.getType() == Request.RequestType.HEARTBEAT) {
+            // Проверки связи приходят постоянно, поэтому не записываются в журнал
+            sendResponse(request, new Response(Response.ResponseType.HEARTBEAT, true, null), session);
+            return;
+        }
+        logger.info("Получен запрос: {}", request.toString());
+
+        if (request.getType() == Request.RequestType.INITIAL_COMMAND) {
+            Command command = commandManager.getCommands().get(request.getCommandName());
+            if (command != null) {
+                if (command.needArgs && request.getArgs().length == 0) {
+                    Response response = new Response(Response.ResponseType.ERROR, false,
+                            "У данной команды обязательно должен быть указан ее аргумент.");
+                    logger.info("Сформирован ответ клиенту: {}", response.toString());
+                    sendResponse(request, response, session);
+                    logger.warn("Команда была введена некорректно!");
+                } else {
+                    logger.info("Запрос на выполнение команды: {}", command.toString());
+                    if (command instanceof FileTransferable) {
+                        processFileRequest(request, (FileTransferable) command, session);
+                    } else if (command.getCommandType() == Command.CommandType.WITHOUT_TICKET_DATA
+                            && responseCache != null && command.isCacheable()) {
+                        processCachedRequest(request, session);
+                    } else if (command.getCommandType() == Command.CommandType.WITHOUT_TICKET_DATA) {
+                        Response response = commandManager.executeCommand(request.getCommandName(), request.getArgs(), collectionManager);
+                        logger.info("Сформирован ответ клиенту: {}", response.toString());
+                        sendResponse(request, response, session);
+                    } else if (request.getWorker() != null) {
+                        // Данные о билете пришли вместе с командой, дополнительный обмен не нужен
+                        Response response = commandManager.executeCommand(request.getCommandName(), request.getArgs(), collectionManager, request.getWorker());
+                        logger.info("Сформирован ответ клиенту: {}", response.toString());
+                        sendResponse(request, response, session);
+                    } else {
+                        Response response = new Response(Response.ResponseType.NEED_TICKET, "Требуется ввести данные о билете");
+                        logger.info("Сформирован ответ клиенту: {}", response.toString());
+                        session.setPendingRequest(request);
+                        sendResponse(request, response, session);
+                    }
+                }
+            } else {
+                Response response = new Response(Response.ResponseType.ERROR, "Введена некорректная команда!");
+                logger.warn("Сформирован ответ клиенту: {}", response.toString());
+                sendResponse(request, response, session);
+            }
+        } else if (request.getType() == Request.RequestType.TICKET_DATA) {
+            Request initialRequest = session.takePendingRequest(request.getRequestId());
+            if (initialRequest == null) {
+                Response response = new Response(Response.ResponseType.ERROR, "Получены данные о билете без команды");
+                logger.warn("Сформирован ответ клиенту: {}", response.toString());
+                sendResponse(request, response, session);
+                return;
+            }
+            Ticket ticket = request.getWorker();
+            logger.info("Получены данные о билете: {}", ticket);
+            Response response = commandManager.executeCommand(initialRequest.getCommandName(), initialRequest.getArgs(), collectionManager, ticket);
+            logger.info("Сформирован ответ клиенту: {}", response.toString());
+            sendResponse(request, response, session);
+        } else if (request.getType() == Request.RequestType.SCRIPT_TRANSFER) {
+            processScriptRequest(request, session);
+        } else if (request.getType() == Request.RequestType.HUGE_CONTENT) {
+            processStreamingRequest(request, session);
         }
     }
 
+    /**
+     * Отвечает на команду чтения закодированным ответом из кэша, а при его отсутствии выполняет команду
+     * Ответ запоминается, только если коллекция не изменилась за время выполнения команды
+     * @param request запрос клиента
+     * @param session сеанс клиента
+     * @throws IOException если возникла ошибка при отправке ответа
+     */
+    private void processCachedRequest(Request request, ClientSession session) throws IOException {
+        long version = collectionManager.getVersion();
+        List<Object> key = ResponseCache.key(request.getCommandName(), request.getArgs(), version,
+                session.getCodec().getId(), session.isCompression(), 0);
+        List<EncodedResponse> cached = responseCache.get(key);
+        if (cached != null) {
+            logger.info("Ответ клиенту взят из кэша");
+            session.send(request.getRequestId(), cached.get(0));
+            return;
+        }
+        Response response = commandManager.executeCommand(request.getCommandName(), request.getArgs(), collectionManager);
+        logger.info("Сформирован ответ клиенту: {}", response.toString());
+        EncodedResponse encoded = session.encode(response);
+        if (collectionManager.getVersion() == version) {
+            responseCache.put(key, version, List.of(encoded));
+        }
+        session.send(request.getRequestId(), encoded);
+    }
+
+    /**
+     * Выполняет команду, передавая ее результат клиенту частями с признаком окончания
+     * @param request запрос клиента
+     * @param session сеанс клиента
+     * @throws IOException если возникла ошибка при отправке ответа
+     */
+    private void processStreamingRequest(Request request, ClientSession session) throws IOException {
+        Command command = commandManager.getCommands().get(request.getCommandName());
+        String error = null;
+        if (command == null) {
+            error = "Введена некорректная команда!";
+        } else if (command.getCommandType() != Command.CommandType.WITHOUT_TICKET_DATA) {
+            error = "Результат данной команды нельзя получить частями";
+        } else if (command.needArgs && request.getArgs().length == 0) {
+            error = "У данной команды обязательно должен быть указан ее аргумент.";
+        }
+        if (error != null) {
+            Response response = new Response(Response.ResponseType.ERROR, false, error);
+            logger.warn("Сформирован ответ клиенту: {}", response.toString());
+            sendResponse(request, response, session);
+            return;
+        }
+
+        logger.info("Запрос на выполнение команды частями: {}", command.toString());
+        boolean cacheable = responseCache != null && command.isCacheable();
+        long version = collectionManager.getVersion();
+        List<Object> key = null;
+        if (cacheable) {
+            key = ResponseCache.key(request.getCommandName(), request.getArgs(), version,
+                    session.getCodec().getId(), session.isCompression(), session.getChunkSize());
+            List<EncodedResponse> cached = responseCache.get(key);
+            if (cached != null) {
+                for (EncodedResponse frame : cached) {
+                    session.send(request.getRequestId(), frame);
+                }
+                logger.info("Результат отправлен клиенту частями из кэша: {}", cached.size() - 1);
+                return;
+            }
+        }
+        ChunkWriter writer = new ChunkWriter(request, session, session.getChunkSize());
+        if (cacheable) {
+            writer.record(responseCache.getMaxEntryBytes());
+        }
+        try {
+            commandManager.streamCommand(request.getCommandName(), request.getArgs(), collectionManager, writer);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.finish();
+        if (writer.getRecorded() != null && collectionManager.getVersion() == version) {
+            responseCache.put(key, version, writer.getRecorded());
+        }
+        logger.info("Результат отправлен клиенту частями: {}", writer.getChunks());
+    }
+
+    /**
+     * Передает клиенту файл, подготовленный командой, кадрами частей файла с признаком окончания
+     * Байты файла передаются из файла в сокет средствами ядра и не копируются в кучу
+     * @param request запрос клиента
+     * @param command команда, подготавливающая файл
+     * @param session сеанс клиента
+     * @throws IOException если возникла ошибка при отправке ответа
+     */
+    private void processFileRequest(Request request, FileTransferable command, ClientSession session) throws IOException {
+        if (!session.isFileTransfer()) {
+            Response response = new Response(Response.ResponseType.ERROR, false,
+                    "Клиент не согласовал передачу файлов при подключении");
+            logger.warn("Сформирован ответ клиенту: {}", response.toString());
+            sendResponse(request, response, session);
+            return;
+        }
+        FileChannel file;
+        long size;
+        try {
+            file = FileChannel.open(command.prepareFile(request.getArgs(), collectionManager), StandardOpenOption.READ);
+            size = file.size();
+        } catch (IllegalStateException | IOException e) {
+            Response response = new Response(Response.ResponseType.ERROR, false, "Не удалось подготовить файл: " + e.getMessage());
+            logger.warn("Сформирован ответ клиенту: {}", response.toString());
+            sendResponse(request, response, session);
+            return;
+        }
+        // Размер берется у открытого файла: атомарная замена при сохранении не меняет уже открытый файл
+        session.sendFile(request.getRequestId(), file, size);
+        Response end = new Response(Response.ResponseType.END_OF_CONTENT, true, String.valueOf(size));
+        sendResponse(request, end, session);
+        logger.info("Клиенту передан файл размером {} байт", size);
+    }
+
     /**
      * Обрабатывает запрос на выполнение скрипта
      * @param request запрос клиента
-     * @param out поток для отправки ответа
+     * @param session сеанс клиента
      * @throws IOException если возникла ошибка при отправке ответа
      */
-    private void processScriptRequest(Request request, ObjectOutputStream out) throws IOException {
+    private void processScriptRequest(Request request, ClientSession session) throws IOException {
         String scriptPath = request.getArgs()[0];
         String scriptContent = request.getScriptContent();
         StringBuilder result = new StringBuilder();
+        // Цепочка скриптов своя у каждого запроса, поэтому одновременные клиенты не мешают друг другу
+        Set<String> activeScripts = new HashSet<>();
 
         try {
-            if (activeScripts.contains(scriptPath)) {
-                throw new ScriptRecursionException("Рекурсия! Скрипт " + scriptPath + " уже выполняется");
-            }
             activeScripts.add(scriptPath);
             logger.info("Начало выполнения скрипта: {}", scriptPath);
 
             result.append("=== Начало выполнения скрипта ").append(scriptPath).append(" ===\n");
-            result.append(processScriptContent(scriptContent, scriptPath));
+            result.append(processScriptContent(scriptContent, scriptPath, activeScripts));
             result.append("=== Завершение скрипта ").append(scriptPath).append(" ===\n");
-
-        } catch (ScriptRecursionException e) {
-            logger.error("Ошибка при выполнении скрипта: {}", e.getMessage());
-            result.append("ОШИБКА: ").append(e.getMessage()).append("\n");
         } finally {
-            activeScripts.remove(scriptPath);
             Response newResponse = new Response(Response.ResponseType.INFO, result.toString());
             logger.info("Сформирован ответ клиенту: {}", newResponse.toString());
-            sendResponse(newResponse, out);
+            sendResponse(request, newResponse, session);
         }
     }
 
@@ -177,9 +819,10 @@ public class TCPServer {
      * Обрабатывает содержимое скрипта
      * @param content содержимое скрипта
      * @param currentScriptPath путь к текущему скрипту
+     * @param activeScripts скрипты текущей цепочки вызовов для предотвращения рекурсии
      * @return результат выполнения скрипта
      */
-    private String processScriptContent(String content, String currentScriptPath) {
+    private String processScriptContent(String content, String currentScriptPath, Set<String> activeScripts) {
         StringBuilder output = new StringBuilder();
         List<String> lines = Arrays.asList(content.split("\n"));
 
@@ -194,7 +837,7 @@ public class TCPServer {
 
                 if (commandName.equalsIgnoreCase("execute_script")) {
                     String nestedScriptPath = args[0];
-                    output.append(handleNestedScript(nestedScriptPath, currentScriptPath));
+                    output.append(handleNestedScript(nestedScriptPath, currentScriptPath, activeScripts));
                 } else {
                     Response response = commandManager.executeCommand(commandName, args, collectionManager);
                     output.append(response.getMessage()).append("\n");
@@ -210,22 +853,22 @@ public class TCPServer {
      * Обрабатывает вложенный скрипт
      * @param scriptPath путь к вложенному скрипту
      * @param parentScript путь к родительскому скрипту
+     * @param activeScripts скрипты текущей цепочки вызовов
      * @return результат выполнения вложенного скрипта
      * @throws Exception если возникла ошибка при выполнении скрипта
      */
-    private String handleNestedScript(String scriptPath, String parentScript) throws Exception {
-        if (activeScripts.contains(scriptPath)) {
+    private String handleNestedScript(String scriptPath, String parentScript, Set<String> activeScripts) throws Exception {
+        if (!activeScripts.add(scriptPath)) {
             throw new ScriptRecursionException("Рекурсивный вызов из " + parentScript + " в " + scriptPath);
         }
 
-        activeScripts.add(scriptPath);
         StringBuilder output = new StringBuilder();
 
         try {
             Path path = Paths.get(scriptPath);
             String content = new String(Files.readAllBytes(path));
             output.append("=== Начало вложенного скрипта ").append(scriptPath).append(" ===\n");
-            output.append(processScriptContent(content, scriptPath));
+            output.append(processScriptContent(content, scriptPath, activeScripts));
             output.append("=== Конец вложенного скрипта ").append(scriptPath).append(" ===\n");
         } finally {
             activeScripts.remove(scriptPath);
@@ -234,14 +877,31 @@ public class TCPServer {
     }
 
     /**
-     * Отправляет ответ клиенту
+     * Отправляет ответ клиенту с идентификатором запроса, на который он дан
+     * @param request запрос клиента
      * @param response ответ для отправки
-     * @param out поток для отправки
+     * @param session сеанс клиента
      * @throws IOException если возникла ошибка при отправке
      */
-    public void sendResponse(Response response, ObjectOutputStream out) throws IOException {
-        out.writeObject(response);
-        out.flush();
+    public void sendResponse(Request request, Response response, ClientSession session) throws IOException {
+        response.setRequestId(request.getRequestId());
+        session.send(response);
+    }
+
+    /**
+     * Возвращает количество клиентов, подключившихся с момента запуска
+     * @return количество подключений
+     */
+    public int getClientCount() {
+        return (int) metrics.getAcceptedConnections();
+    }
+
+    /**
+     * Возвращает показатели работы сервера: подключения, запросы, отказы и датаграммы
+     * @return показатели работы сервера
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
     }
 
     /**
@@ -261,6 +921,13 @@ public class TCPServer {
             if (commandName.equalsIgnoreCase("exit")) {
                 logger.info("Получена команда на завершение работы сервера");
                 disconnect();
+            } else if (commandName.equalsIgnoreCase("stats")) {
+                System.out.println(metrics.report());
+                System.out.println(dispatcher.report());
+                System.out.println("Совмещено одинаковых команд чтения: " + commandManager.getCoalescedCount());
+                if (responseCache != null) {
+                    System.out.println(responseCache.report());
+                }
             } else {
                 logger.info("Выполнение команды администратора: {}", commandName);
                 System.out.println((commandManager.executeCommand(commandName, commandArgs, collectionManager)).getMessage());
@@ -269,39 +936,86 @@ public class TCPServer {
     }
 
     /**
-     * Останавливает сервер и освобождает ресурсы
+     * Останавливает сервер и завершает процесс
      */
     public void disconnect() {
-        logger.info("Начало отключения сервера");
-        if (!isRunning) return;
-        isRunning = false;
         System.out.println("Завершение работы сервера...");
+        drain();
+        System.out.println("Коллекция сохранена в файл. \nСервер остановлен корректно. Всем пока!");
+        System.exit(0);
+    }
 
-        collectionManager.saveCollectionToFile();
+    /**
+     * Плавно останавливает сервер, не завершая процесс
+     * Сначала прекращается прием подключений, затем в пределах заданного в настройках времени
+     * завершаются уже принятые запросы и отправляются ответы на них, после чего коллекция сохраняется
+     * и закрываются соединения; на запросы, полученные во время остановки, клиенты получают отказ
+     */
+    public void drain() {
+        synchronized (this) {
+            if (draining) return;
+            draining = true;
+        }
+        logger.info("Начало отключения сервера");
+        acceptors.forEach(Acceptor::shutdown);
+        if (datagramEndpoint != null) {
+            datagramEndpoint.shutdown();
+        }
+        for (ServerSocketChannel channel : serverChannels) {
+            try {
+                SocketAddress local = channel.getLocalAddress();
+                channel.close();
+                if (local instanceof UnixDomainSocketAddress unix) {
+                    Files.deleteIfExists(unix.getPath());
+                }
+            } catch (IOException e) {
+                logger.error("Ошибка при закрытии серверного канала: {}", e.getMessage());
+            }
+        }
 
-        activeSockets.forEach(this::closeSocket);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getDrainTimeoutMillis());
+        if (dispatcher != null && !dispatcher.drain(deadline)) {
+            logger.warn("Не все запросы завершились за {} мс", config.getDrainTimeoutMillis());
+        }
+        for (ClientSession session : activeSessions) {
+            if (!session.awaitFlushed(deadline)) {
+                logger.warn("Клиенту {} не удалось отправить все ответы до остановки", session.getRemoteAddress());
+            }
+        }
 
+        // Все изменения уже выполнены, поэтому сохраняется согласованное состояние коллекции
         try {
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close();
-            }
-            logger.info("Сервер успешно остановлен");
-        } catch (IOException e) {
-            logger.error("Ошибка при остановке сервера: {}", e.getMessage());
+            collectionManager.saveCollectionToFile();
+        } catch (IllegalStateException e) {
+            logger.error("Коллекция не сохранена при остановке: {}", e.getMessage());
         }
 
-        System.out.println("Коллекция сохранена в файл. \nСервер остановлен корректно. Всем пока!");
-        System.exit(0);
+        activeSessions.forEach(this::closeSession);
+        if (ioLoops != null) {
+            Arrays.stream(ioLoops).forEach(IoLoop::shutdown);
+        }
+        if (dispatcher != null) {
+            dispatcher.shutdownNow();
+        }
+        if (reaper != null) {
+            reaper.shutdownNow();
+        }
+        logger.info("Сервер успешно остановлен");
     }
 
     /**
-     * Закрывает сокет клиента
-     * @param socket сокет для закрытия
+     * Закрывает соединение с клиентом и забывает его сеанс
+     * @param session сеанс для закрытия
      */
-    private void closeSocket(Socket socket) {
+    void closeSession(ClientSession session) {
+        if (session == null) return;
+        if (activeSessions.remove(session)) {
+            limiter.release(session.getRemoteAddress());
+            metrics.connectionClosed();
+        }
         try {
-            if (socket != null && !socket.isClosed()) {
-                socket.close();
+            if (!session.isClosed()) {
+                session.close();
                 logger.info("Соединение с клиентом закрыто!");
             }
         } catch (IOException e) {
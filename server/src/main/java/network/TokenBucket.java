@@ -0,0 +1,69 @@
+package network;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ведро жетонов для ограничения частоты запросов
+ * Жетоны пополняются равномерно с заданной скоростью до емкости ведра; запрос выполняется,
+ * только если в ведре хватает жетонов на его стоимость, поэтому короткий всплеск до емкости допустим,
+ * а средняя частота не превышает скорость пополнения
+ */
+public class TokenBucket {
+    private final double capacity;
+    /** Скорость пополнения в жетонах за наносекунду */
+    private final double refillPerNano;
+    private double tokens;
+    /** Момент последнего пополнения по System.nanoTime() */
+    private long refilledAt;
+
+    /**
+     * Создает полное ведро
+     * @param capacity емкость ведра в жетонах
+     * @param refillPerSecond скорость пополнения в жетонах в секунду
+     */
+    public TokenBucket(int capacity, int refillPerSecond) {
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+        this.tokens = capacity;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Забирает жетоны на стоимость запроса, если их хватает
+     * Стоимость больше емкости ведра ограничивается емкостью, чтобы такой запрос вообще мог выполниться
+     * @param cost стоимость запроса в жетонах
+     * @return 0, если жетоны забраны, иначе время в наносекундах, через которое их станет достаточно
+     */
+    public synchronized long tryConsume(int cost) {
+        refill();
+        double needed = Math.min(cost, capacity);
+        if (tokens >= needed) {
+            tokens -= needed;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((needed - tokens) / refillPerNano));
+    }
+
+    /**
+     * Возвращает жетоны запроса, который не был выполнен по другой причине
+     * @param cost стоимость запроса в жетонах
+     */
+    public synchronized void refund(int cost) {
+        tokens = Math.min(capacity, tokens + Math.min(cost, capacity));
+    }
+
+    /**
+     * Проверяет, что ведро полное, то есть запросов давно не было
+     * @return true, если ведро полное
+     */
+    public synchronized boolean isFull() {
+        refill();
+        return tokens >= capacity;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * refillPerNano);
+        refilledAt = now;
+    }
+}
@@ -0,0 +1,151 @@
+package managers;
+
+import junit.framework.TestCase;
+import mainClasses.*;
+import protocol.TicketCodec;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Vector;
+import java.util.stream.Stream;
+
+/**
+ * Проверяет, что коллекция, записанная {@link CollectionWriter} в XML и в двоичный снимок,
+ * читается {@link CollectionParser} без изменений вместе со следующим свободным id
+ */
+public class CollectionFilesTest extends TestCase {
+    private Path directory;
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = Files.createTempDirectory("collection-files");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static Vector<Ticket> collection() {
+        Vector<Ticket> tickets = new Vector<>();
+        tickets.add(new Ticket(3, "Рок & <ролл> \"live\"", new Coordinates(-1.5, -414.5f),
+                ZonedDateTime.of(2024, 1, 16, 19, 30, 0, 0, ZoneId.of("Europe/Moscow")), 350, false,
+                TicketType.USUAL, new Venue(1, "Клуб 'Космонавт'", 1500L, VenueType.BAR)));
+        tickets.add(new Ticket(1, "Опера", new Coordinates(0.0, 0f),
+                ZonedDateTime.of(2023, 12, 31, 23, 59, 59, 999_000_000, ZoneOffset.ofHours(5)), Integer.MAX_VALUE, true,
+                TicketType.VIP, null));
+        tickets.add(new Ticket(40, "Матч", new Coordinates(55.75, 37.6f),
+                ZonedDateTime.of(2024, 6, 1, 12, 0, 0, 0, ZoneOffset.UTC), 1, true,
+                TicketType.CHEAP, new Venue(2, "Стадион", Long.MAX_VALUE, VenueType.STADIUM)));
+        return tickets;
+    }
+
+    private static void assertSameCollection(Vector<Ticket> expected, Vector<Ticket> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Ticket a = expected.get(i);
+            Ticket b = actual.get(i);
+            assertEquals(a.getId(), b.getId());
+            assertEquals(a.getName(), b.getName());
+            assertEquals(a.getCoordinates().getX(), b.getCoordinates().getX());
+            assertEquals(a.getCoordinates().getY(), b.getCoordinates().getY());
+            assertTrue(a.getCreationDate() + " != " + b.getCreationDate(), a.getCreationDate().isEqual(b.getCreationDate()));
+            assertEquals(a.getCreationDate().getZone(), b.getCreationDate().getZone());
+            assertEquals(a.getPrice(), b.getPrice());
+            assertEquals(a.getRefundable(), b.getRefundable());
+            assertEquals(a.getTicketType(), b.getTicketType());
+            if (a.getVenue() == null) {
+                assertNull(b.getVenue());
+            } else {
+                assertEquals(a.getVenue(), b.getVenue());
+                assertEquals(a.getVenue().getCapacity(), b.getVenue().getCapacity());
+            }
+        }
+    }
+
+    private static Vector<Ticket> parse(CollectionParser parser, Path file, String expectedMessage) {
+        HashMap<String, Vector<Ticket>> result = parser.parseFromFile(file.toString());
+        assertEquals(1, result.size());
+        assertEquals(expectedMessage, result.keySet().iterator().next());
+        return result.values().iterator().next();
+    }
+
+    private void checkRoundTrip(String fileName) {
+        Path file = directory.resolve(fileName);
+        Vector<Ticket> tickets = collection();
+        assertTrue(new CollectionWriter().writeToFile(file.toString(), tickets, 57));
+        assertFalse("временный файл остался", Files.exists(directory.resolve(fileName + ".tmp")));
+
+        CollectionParser parser = new CollectionParser(new CollectionManager());
+        assertSameCollection(tickets, parse(parser, file, ""));
+        assertEquals(57, parser.getNextId());
+    }
+
+    public void testXmlRoundTrip() {
+        checkRoundTrip("tickets.xml");
+    }
+
+    public void testSnapshotRoundTrip() {
+        checkRoundTrip("tickets" + CollectionWriter.SNAPSHOT_EXTENSION);
+    }
+
+    public void testEmptyCollection() {
+        for (String fileName : new String[]{"empty.xml", "empty" + CollectionWriter.SNAPSHOT_EXTENSION}) {
+            Path file = directory.resolve(fileName);
+            assertTrue(new CollectionWriter().writeToFile(file.toString(), new Vector<>(), 1));
+            CollectionParser parser = new CollectionParser(new CollectionManager());
+            assertTrue(parse(parser, file, "").isEmpty());
+            assertEquals(1, parser.getNextId());
+        }
+    }
+
+    public void testFirstSnapshotVersionHasNoNextId() throws IOException {
+        Path file = directory.resolve("old" + CollectionWriter.SNAPSHOT_EXTENSION);
+        Vector<Ticket> tickets = collection();
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            out.writeInt(CollectionWriter.SNAPSHOT_MAGIC);
+            out.writeByte(1);
+            TicketCodec.writeVarInt(out, tickets.size());
+            for (Ticket ticket : tickets) {
+                TicketCodec.writeTicket(out, ticket);
+            }
+        }
+        CollectionParser parser = new CollectionParser(new CollectionManager());
+        assertSameCollection(tickets, parse(parser, file, ""));
+        assertEquals(0, parser.getNextId());
+    }
+
+    public void testInvalidSnapshotRecords() {
+        Path file = directory.resolve("invalid" + CollectionWriter.SNAPSHOT_EXTENSION);
+        Vector<Ticket> tickets = collection();
+        // Билет с некорректной ценой отбрасывается, а некорректное место проведения - только само место
+        tickets.add(new Ticket(41, "Без цены", new Coordinates(1.0, 1f), ZonedDateTime.now(), 0, true, TicketType.CHEAP, null));
+        tickets.get(0).setVenue(new Venue(1, "", 1500L, VenueType.BAR));
+        tickets.add(new Ticket(3, "Повтор id", new Coordinates(1.0, 1f), ZonedDateTime.now(), 5, true, TicketType.CHEAP, null));
+        assertTrue(new CollectionWriter().writeToFile(file.toString(), tickets, 100));
+
+        Vector<Ticket> parsed = parse(new CollectionParser(new CollectionManager()), file,
+                "Обнаружено несколько билетов с одинаковым ID!\nВ коллекцию добавлен только один билет с id = 40");
+        assertEquals(3, parsed.size());
+        assertNull(parsed.get(0).getVenue());
+        assertEquals("Рок & <ролл> \"live\"", parsed.get(0).getName());
+    }
+
+    public void testNotASnapshot() throws IOException {
+        Path file = directory.resolve("garbage" + CollectionWriter.SNAPSHOT_EXTENSION);
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6});
+        HashMap<String, Vector<Ticket>> result = new CollectionParser(new CollectionManager()).parseFromFile(file.toString());
+        String message = result.keySet().iterator().next();
+        assertTrue(message, message.startsWith("Ошибка: файл не является снимком коллекции"));
+        assertTrue(result.get(message).isEmpty());
+    }
+}
@@ -0,0 +1,136 @@
+package managers;
+
+import commands.ShowCommand;
+import junit.framework.TestCase;
+import mainClasses.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.ZonedDateTime;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Проверяет совмещение одинаковых команд чтения, результат которых передается частями
+ */
+public class CommandManagerTest extends TestCase {
+    private final CollectionManager collectionManager = new CollectionManager();
+    private final CommandManager commandManager = new CommandManager();
+    /** Сколько раз команда show действительно выполнялась */
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @Override
+    protected void setUp() {
+        Vector<Ticket> tickets = new Vector<>();
+        for (int id = 1; id <= 50; id++) {
+            tickets.add(new Ticket(id, "Билет " + (id * 7 % 50), new Coordinates(1.0 * id, id), ZonedDateTime.now(),
+                    id, true, TicketType.values()[id % TicketType.values().length], null));
+        }
+        collectionManager.setTicketsCollection(tickets);
+        commandManager.registerCommand(new ShowCommand() {
+            @Override
+            public void stream(String[] args, CollectionManager collectionManager, Consumer<String> out) {
+                executions.incrementAndGet();
+                super.stream(args, collectionManager, out);
+            }
+        });
+    }
+
+    /**
+     * Запускает show частями в отдельном потоке, записывая результат
+     */
+    private Thread streamShow(StringBuilder result) {
+        Thread thread = new Thread(() ->
+                commandManager.streamCommand("show", new String[0], collectionManager, result::append));
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Дожидается, пока поток не остановится в ожидании результата первой команды
+     */
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (thread.getState() != Thread.State.WAITING) {
+            assertTrue("Поток не присоединился к выполняющейся команде", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    public void testConcurrentStreamedShowRunsOnce() throws InterruptedException {
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        StringBuilder leaderResult = new StringBuilder();
+        Thread leader = new Thread(() -> commandManager.streamCommand("show", new String[0], collectionManager, part -> {
+            leaderStarted.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            leaderResult.append(part);
+        }));
+        leader.start();
+        assertTrue(leaderStarted.await(10, TimeUnit.SECONDS));
+
+        StringBuilder followerResult = new StringBuilder();
+        Thread follower = streamShow(followerResult);
+        awaitWaiting(follower);
+        release.countDown();
+        leader.join();
+        follower.join();
+
+        String expected = collectionManager.showCollectionElements();
+        assertEquals(expected, leaderResult.toString());
+        assertEquals(expected, followerResult.toString());
+        assertEquals(1, executions.get());
+        assertEquals(1, commandManager.getCoalescedCount());
+    }
+
+    public void testFollowerRunsItselfWhenLeaderFails() throws InterruptedException {
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread leader = new Thread(() -> {
+            try {
+                commandManager.streamCommand("show", new String[0], collectionManager, part -> {
+                    leaderStarted.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    // Клиент первой команды отключился посреди передачи
+                    throw new UncheckedIOException(new IOException("Соединение закрыто"));
+                });
+            } catch (UncheckedIOException expected) {
+                // ошибка отправки достается только первой команде
+            }
+        });
+        leader.start();
+        assertTrue(leaderStarted.await(10, TimeUnit.SECONDS));
+
+        StringBuilder followerResult = new StringBuilder();
+        Thread follower = streamShow(followerResult);
+        awaitWaiting(follower);
+        release.countDown();
+        leader.join();
+        follower.join();
+
+        assertEquals(collectionManager.showCollectionElements(), followerResult.toString());
+        assertEquals(2, executions.get());
+        assertEquals(0, commandManager.getCoalescedCount());
+    }
+
+    public void testSequentialStreamsAreNotShared() {
+        StringBuilder first = new StringBuilder();
+        StringBuilder second = new StringBuilder();
+        commandManager.streamCommand("show", new String[0], collectionManager, first::append);
+        commandManager.streamCommand("show", new String[0], collectionManager, second::append);
+        assertEquals(first.toString(), second.toString());
+        assertEquals(2, executions.get());
+        assertEquals(0, commandManager.getCoalescedCount());
+    }
+}
@@ -0,0 +1,106 @@
+package managers;
+
+import junit.framework.TestCase;
+import mainClasses.Ticket;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Проверяет индекс билетов по id, в первую очередь удаление со сдвигом цепочек пробирования
+ */
+public class TicketIdIndexTest extends TestCase {
+
+    private static Ticket ticket(int id) {
+        Ticket ticket = new Ticket();
+        ticket.setId(id);
+        return ticket;
+    }
+
+    public void testPutGetReplace() {
+        TicketIdIndex index = new TicketIdIndex();
+        Ticket first = ticket(5);
+        assertNull(index.put(5, first, 10));
+        assertSame(first, index.get(5));
+        assertEquals(10, index.getOrder(5));
+        Ticket second = ticket(5);
+        assertSame(first, index.put(5, second, 20));
+        assertSame(second, index.get(5));
+        assertEquals(20, index.getOrder(5));
+        assertEquals(1, index.size());
+        assertNull(index.get(6));
+    }
+
+    public void testMissingIdHasNoOrder() {
+        TicketIdIndex index = new TicketIdIndex();
+        try {
+            index.getOrder(1);
+            fail("Порядковый ключ отсутствующего билета возвращен");
+        } catch (IllegalArgumentException expected) {
+            // отсутствие билета - ошибка вызывающего кода
+        }
+        try {
+            index.setOrder(1, 1);
+            fail("Порядковый ключ отсутствующего билета изменен");
+        } catch (IllegalArgumentException expected) {
+            // отсутствие билета - ошибка вызывающего кода
+        }
+    }
+
+    public void testRemoveKeepsChainsReachable() {
+        // Идентификаторы, кратные емкости, попадают в одну цепочку и при небольшой таблице
+        TicketIdIndex index = new TicketIdIndex();
+        int[] ids = new int[64];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i << 16;
+            index.put(ids[i], ticket(ids[i]), i);
+        }
+        for (int i = 0; i < ids.length; i += 2) {
+            assertNotNull(index.remove(ids[i]));
+            assertNull(index.remove(ids[i]));
+        }
+        assertEquals(ids.length / 2, index.size());
+        for (int i = 0; i < ids.length; i++) {
+            if (i % 2 == 0) {
+                assertNull(index.get(ids[i]));
+            } else {
+                assertEquals(ids[i], (int) index.get(ids[i]).getId());
+                assertEquals(i, index.getOrder(ids[i]));
+            }
+        }
+    }
+
+    public void testRemoveAgainstModel() {
+        Random random = new Random(22);
+        TicketIdIndex index = new TicketIdIndex();
+        Map<Integer, Ticket> model = new HashMap<>();
+        for (int step = 0; step < 200_000; step++) {
+            // Узкий диапазон id дает много совпадений и длинные цепочки после удалений
+            int id = random.nextInt(4096) - 64;
+            if (random.nextInt(3) == 0) {
+                assertSame(model.remove(id), index.remove(id));
+            } else {
+                Ticket ticket = ticket(id);
+                assertSame(model.put(id, ticket), index.put(id, ticket, step));
+            }
+            assertEquals(model.size(), index.size());
+        }
+        for (int id = -64; id < 4096 - 64; id++) {
+            assertSame(model.get(id), index.get(id));
+        }
+    }
+
+    public void testClear() {
+        TicketIdIndex index = new TicketIdIndex();
+        for (int id = 1; id <= 1000; id++) {
+            index.put(id, ticket(id), id);
+        }
+        index.clear();
+        assertEquals(0, index.size());
+        assertNull(index.get(500));
+        index.put(500, ticket(500), 1);
+        assertEquals(1, index.size());
+        assertEquals(1, index.getOrder(500));
+    }
+}